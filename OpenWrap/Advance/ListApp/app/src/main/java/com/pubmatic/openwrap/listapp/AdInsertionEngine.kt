@@ -0,0 +1,102 @@
+package com.pubmatic.openwrap.listapp
+
+import java.util.Arrays
+
+/**
+ * Class definition of engine to insert banners in a stream of content items as per the placement
+ * policy. Banner positions are computed incrementally as content pages are appended, a banner is
+ * placed only if there is content after it, hence banners of a new page are always appended after
+ * the existing items.
+ *
+ * Engine keeps only the sorted adapter positions of banners, adapter and content positions are
+ * translated with binary search i.e. O(log n), without building the merged list.
+ */
+class AdInsertionEngine(private val policy: AdPlacementPolicy) {
+
+    // Sorted adapter positions of the banners
+    private var adPositions = IntArray(INITIAL_CAPACITY)
+
+    /**
+     * Number of banners in the feed
+     */
+    var adCount = 0
+        private set
+
+    /**
+     * Number of content items in the feed
+     */
+    var contentCount = 0
+        private set
+
+    /**
+     * Number of items in the feed, i.e. content items and banners
+     */
+    val itemCount: Int
+        get() = contentCount + adCount
+
+    companion object {
+        private const val INITIAL_CAPACITY = 16
+    }
+
+    /**
+     * Appends given number of content items and places the banners which are due. Returns the
+     * number of banners placed, their positions are after the items existing before this call.
+     */
+    fun appendContent(count: Int): Int {
+        require(count >= 0) { "Count should not be negative" }
+        contentCount += count
+        var placed = 0
+        while (adCount < policy.maxAdsPerSession) {
+            // Number of content items before the next banner
+            val contentBefore = policy.firstPosition + adCount * policy.interval
+            if (contentBefore >= contentCount) {
+                break
+            }
+            addAdPosition(contentBefore + adCount)
+            placed++
+        }
+        return placed
+    }
+
+    /**
+     * Returns true if there is a banner at given adapter position
+     */
+    fun isAd(position: Int): Boolean {
+        return Arrays.binarySearch(adPositions, 0, adCount, position) >= 0
+    }
+
+    /**
+     * Returns the content position of given adapter position, -1 if there is a banner at it
+     */
+    fun getContentPosition(position: Int): Int {
+        val index = Arrays.binarySearch(adPositions, 0, adCount, position)
+        if (index >= 0) {
+            return -1
+        }
+        // Insertion point is the number of banners before the position
+        return position - (-index - 1)
+    }
+
+    /**
+     * Returns the number of content items before given adapter position
+     */
+    fun getContentCountBefore(position: Int): Int {
+        val index = Arrays.binarySearch(adPositions, 0, adCount, position)
+        return position - (if (index >= 0) index else -index - 1)
+    }
+
+    /**
+     * Clears the content and banners, e.g. for a new session
+     */
+    fun reset() {
+        adCount = 0
+        contentCount = 0
+    }
+
+    private fun addAdPosition(position: Int) {
+        if (adCount == adPositions.size) {
+            adPositions = adPositions.copyOf(adPositions.size * 2)
+        }
+        adPositions[adCount++] = position
+    }
+}
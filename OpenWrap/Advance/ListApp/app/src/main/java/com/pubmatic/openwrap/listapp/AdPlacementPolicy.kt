@@ -0,0 +1,18 @@
+package com.pubmatic.openwrap.listapp
+
+/**
+ * Data class represent the policy to place banners in the feed.
+ *
+ * @param firstPosition number of content items before the first banner
+ * @param interval number of content items between two banners
+ * @param maxAdsPerSession maximum number of banners in the feed
+ */
+data class AdPlacementPolicy(val firstPosition: Int, val interval: Int,
+                             val maxAdsPerSession: Int = Int.MAX_VALUE) {
+
+    init {
+        require(firstPosition >= 0) { "First position should not be negative" }
+        require(interval > 0) { "Interval should be positive" }
+        require(maxAdsPerSession >= 0) { "Maximum ads per session should not be negative" }
+    }
+}
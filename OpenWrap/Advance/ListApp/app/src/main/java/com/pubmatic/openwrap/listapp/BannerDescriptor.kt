@@ -0,0 +1,14 @@
+package com.pubmatic.openwrap.listapp
+
+import com.pubmatic.sdk.common.POBAdSize
+
+/**
+ * Data class represent the configuration of a banner slot. It is used to create the banner view
+ * when the slot is first bound or prefetched, so the feed does not construct banner views up front.
+ */
+data class BannerDescriptor(val pubId: String, val profileId: Int, val adUnitId: String,
+                            val adSize: POBAdSize) {
+
+    // Banner views are interchangeable between the slots having the same key
+    val key: String = "$pubId:$profileId:$adUnitId:${adSize.adWidth}x${adSize.adHeight}"
+}
@@ -0,0 +1,138 @@
+package com.pubmatic.openwrap.listapp
+
+import android.os.SystemClock
+import androidx.recyclerview.widget.LinearLayoutManager
+import androidx.recyclerview.widget.RecyclerView
+import com.pubmatic.sdk.openwrap.banner.POBBannerView
+
+/**
+ * Class definition to prefetch banners ahead of the visible items of recycler view, so that banner
+ * is already loaded when its slot appears on the screen.
+ *
+ * Scheduler estimates the scroll velocity and loads the banners within prefetch window i.e. visible
+ * items plus given number of items ahead in scroll direction, the window grows with the velocity.
+ * Number of concurrent banner loads is capped, remaining banners wait in queue and are dropped
+ * from the queue if user scrolls away before their load is started.
+ */
+class BannerPrefetchScheduler(private val adapter: FeedListAdapter,
+                              private val prefetchDistance: Int = DEFAULT_PREFETCH_DISTANCE,
+                              private val maxInFlightLoads: Int = DEFAULT_MAX_IN_FLIGHT_LOADS)
+    : RecyclerView.OnScrollListener(), FeedListAdapter.OnBannerLoadListener {
+
+    companion object {
+        // Number of items ahead of visible items to prefetch banners for
+        const val DEFAULT_PREFETCH_DISTANCE = 3
+        // Maximum number of banners loading at the same time
+        const val DEFAULT_MAX_IN_FLIGHT_LOADS = 2
+        // Approximate time taken by a banner to load, used to extend the window with velocity
+        private const val BANNER_LOAD_TIME_MS = 1000f
+        // Weight of the latest sample in the smoothed velocity
+        private const val VELOCITY_SMOOTHING = 0.3f
+    }
+
+    // Banners waiting for a free load slot, nearest first
+    private val queuedBanners = ArrayList<FeedItem>()
+
+    // Banners being loaded
+    private val inFlightBanners = HashSet<POBBannerView>()
+
+    // Smoothed scroll velocity in pixels per second, positive when scrolling towards the end
+    private var velocity = 0f
+    private var lastScrollTime = 0L
+
+    override fun onScrolled(recyclerView: RecyclerView, dx: Int, dy: Int) {
+        val now = SystemClock.uptimeMillis()
+        if (lastScrollTime > 0 && now > lastScrollTime) {
+            val instantVelocity = dy * 1000f / (now - lastScrollTime)
+            velocity = VELOCITY_SMOOTHING * instantVelocity + (1 - VELOCITY_SMOOTHING) * velocity
+        }
+        lastScrollTime = now
+        schedule(recyclerView)
+    }
+
+    override fun onScrollStateChanged(recyclerView: RecyclerView, newState: Int) {
+        if (newState == RecyclerView.SCROLL_STATE_IDLE) {
+            // Velocity is not relevant once scrolling stops
+            velocity = 0f
+            lastScrollTime = 0L
+            schedule(recyclerView)
+        }
+    }
+
+    override fun onBannerLoadFinished(banner: POBBannerView) {
+        if (inFlightBanners.remove(banner)) {
+            startQueuedLoads()
+        }
+    }
+
+    /**
+     * Schedules the prefetch of banners for the given visible item range
+     */
+    fun schedule(firstVisible: Int, lastVisible: Int, averageItemHeight: Int = 0) {
+        val feedItems = adapter.feedItems
+        if (feedItems.isEmpty() || firstVisible == RecyclerView.NO_POSITION) {
+            return
+        }
+
+        // Extend the window by the number of items expected to scroll in while a banner loads
+        var lookahead = prefetchDistance
+        if (averageItemHeight > 0) {
+            lookahead += (Math.abs(velocity) * BANNER_LOAD_TIME_MS / 1000f / averageItemHeight).toInt()
+        }
+
+        // Visible items are prefetched first, followed by the items ahead in scroll direction
+        queuedBanners.clear()
+        for (position in firstVisible..lastVisible) {
+            queueIfPending(feedItems, position)
+        }
+        if (velocity >= 0) {
+            for (position in lastVisible + 1..lastVisible + lookahead) {
+                queueIfPending(feedItems, position)
+            }
+        } else {
+            for (position in firstVisible - 1 downTo firstVisible - lookahead) {
+                queueIfPending(feedItems, position)
+            }
+        }
+        startQueuedLoads()
+    }
+
+    /**
+     * Loads the banner of given feed item immediately, it is counted as an in-flight load
+     */
+    fun load(feedItem: FeedItem) {
+        if (feedItem.bannerState == FeedItem.BannerState.NOT_LOADED) {
+            adapter.loadBanner(feedItem)?.let { inFlightBanners.add(it) }
+        }
+    }
+
+    private fun schedule(recyclerView: RecyclerView) {
+        val layoutManager = recyclerView.layoutManager as? LinearLayoutManager ?: return
+        val firstVisible = layoutManager.findFirstVisibleItemPosition()
+        val lastVisible = layoutManager.findLastVisibleItemPosition()
+        if (firstVisible == RecyclerView.NO_POSITION) {
+            return
+        }
+        schedule(firstVisible, lastVisible, recyclerView.height / (lastVisible - firstVisible + 1))
+    }
+
+    private fun queueIfPending(feedItems: List<FeedItem>, position: Int) {
+        if (position < 0 || position >= feedItems.size) {
+            return
+        }
+        val feedItem = feedItems[position]
+        if (feedItem.feedType == FeedItem.FeedType.BANNER
+                && feedItem.bannerState == FeedItem.BannerState.NOT_LOADED) {
+            queuedBanners.add(feedItem)
+        }
+    }
+
+    // Starts the queued loads while there is a free load slot. The queue is rebuilt on every
+    // schedule, hence banners which are out of the window are not loaded. Loads already in flight
+    // can not be cancelled and are allowed to complete.
+    private fun startQueuedLoads() {
+        while (inFlightBanners.size < maxInFlightLoads && queuedBanners.isNotEmpty()) {
+            load(queuedBanners.removeAt(0))
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package com.pubmatic.openwrap.listapp
+
+import android.util.DisplayMetrics
+import com.pubmatic.sdk.common.POBAdSize
+import com.pubmatic.sdk.common.utility.POBUtils
+
+/**
+ * Class definition of cache of banner creative dimensions in pixels per ad size. Cached dimensions
+ * are dropped when display density changes, or when invalidated explicitly on configuration change.
+ */
+class BannerSizeCache {
+
+    companion object {
+        fun pack(width: Int, height: Int): Long {
+            return (width.toLong() shl 32) or (height.toLong() and 0xFFFFFFFFL)
+        }
+
+        fun width(size: Long): Int {
+            return (size shr 32).toInt()
+        }
+
+        fun height(size: Long): Int {
+            return size.toInt()
+        }
+    }
+
+    // Packed pixel width and height per packed ad size
+    private val pixelSizes = HashMap<Long, Long>()
+
+    // Display density for which the dimensions are cached
+    private var density = 0f
+
+    /**
+     * Returns the width and height in pixels of given ad size, packed as (width shl 32 or height)
+     */
+    fun getPixelSize(adSize: POBAdSize, displayMetrics: DisplayMetrics): Long {
+        if (displayMetrics.density != density) {
+            invalidate()
+            density = displayMetrics.density
+        }
+        val key = pack(adSize.adWidth, adSize.adHeight)
+        return pixelSizes.getOrPut(key) {
+            pack(POBUtils.convertDpToPixel(adSize.adWidth), POBUtils.convertDpToPixel(adSize.adHeight))
+        }
+    }
+
+    /**
+     * Drops the cached dimensions
+     */
+    fun invalidate() {
+        pixelSizes.clear()
+    }
+}
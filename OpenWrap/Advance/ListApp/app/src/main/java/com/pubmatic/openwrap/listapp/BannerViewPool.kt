@@ -0,0 +1,132 @@
+package com.pubmatic.openwrap.listapp
+
+import android.view.ViewGroup
+import com.pubmatic.sdk.openwrap.banner.POBBannerView
+import java.util.IdentityHashMap
+
+/**
+ * Class definition of bounded pool of banner views keyed by banner descriptor. Banner feed items do
+ * not own a banner view, a view is created from the descriptor or checked out from the pool when
+ * the banner slot is bound or prefetched and returned when the slot is recycled. Hence the number of
+ * banner views (and their WebViews) does not grow with the number of banner items in the feed.
+ *
+ * Returned view keeps the creative of its slot, so the same view is handed out again if the slot is
+ * bound before the view is given to another slot. When a view is given to another slot or evicted,
+ * its previous slot is marked as not loaded, reported to onSlotDetached and is loaded again on next
+ * bind.
+ */
+class BannerViewPool(private val maxIdleViewsPerBanner: Int = DEFAULT_MAX_IDLE_VIEWS_PER_BANNER,
+                     private val onSlotDetached: (FeedItem) -> Unit = {},
+                     private val createBanner: (BannerDescriptor) -> POBBannerView) {
+
+    companion object {
+        // Number of idle banner views kept per banner descriptor
+        const val DEFAULT_MAX_IDLE_VIEWS_PER_BANNER = 3
+    }
+
+    // Idle views per banner descriptor key, least recently returned first
+    private val idleViews = HashMap<String, ArrayList<POBBannerView>>()
+
+    // Slot whose creative is held by the view and the other way around
+    private val viewOwners = IdentityHashMap<POBBannerView, FeedItem>()
+    private val slotViews = IdentityHashMap<FeedItem, POBBannerView>()
+
+    // Number of views created by the pool and alive
+    var viewCount = 0
+        private set
+
+    /**
+     * Checks out the banner view for given banner slot. Returns the view which holds the creative of
+     * the slot if available, else an idle view of the same descriptor or a new view.
+     */
+    fun acquire(feedItem: FeedItem): POBBannerView? {
+        val descriptor = feedItem.banner ?: return null
+        val key = descriptor.key
+
+        slotViews[feedItem]?.let { view ->
+            idleViews[key]?.remove(view)
+            return view
+        }
+
+        // Prefer an idle view which is not loading, least recently returned first
+        val idle = idleViews[key]
+        var view: POBBannerView? = null
+        if (idle != null) {
+            val index = idle.indexOfFirst { viewOwners[it]?.bannerState != FeedItem.BannerState.LOADING }
+            if (index >= 0) {
+                view = idle.removeAt(index)
+            }
+        }
+        if (view == null) {
+            view = createBanner(descriptor)
+            viewCount++
+        } else {
+            viewOwners[view]?.let { detachSlot(it) }
+        }
+        viewOwners[view] = feedItem
+        slotViews[feedItem] = view
+        return view
+    }
+
+    /**
+     * Returns the view of given banner slot to the pool. View keeps the creative of the slot, least
+     * recently returned view which is not loading is destroyed if the pool of the descriptor is full.
+     */
+    fun release(feedItem: FeedItem) {
+        val view = slotViews[feedItem] ?: return
+        val descriptor = feedItem.banner ?: return
+        val idle = idleViews.getOrPut(descriptor.key) { ArrayList() }
+        if (idle.contains(view)) {
+            return
+        }
+        idle.add(view)
+        if (idle.size > maxIdleViewsPerBanner) {
+            // Loading views are not evicted, their load is still tracked by the prefetch scheduler.
+            // Pool stays over the limit until one of them finishes and another view is returned.
+            val index = idle.indexOfFirst { viewOwners[it]?.bannerState != FeedItem.BannerState.LOADING }
+            if (index >= 0) {
+                destroyView(idle.removeAt(index))
+            }
+        }
+    }
+
+    /**
+     * Returns true if the view of given banner slot is checked out and not returned yet
+     */
+    fun isCheckedOut(feedItem: FeedItem): Boolean {
+        val view = slotViews[feedItem] ?: return false
+        val descriptor = feedItem.banner ?: return false
+        return idleViews[descriptor.key]?.contains(view) != true
+    }
+
+    /**
+     * Returns the banner slot whose creative is held by given view
+     */
+    fun getOwner(view: POBBannerView): FeedItem? {
+        return viewOwners[view]
+    }
+
+    /**
+     * Destroys all the views, call it before finishing the activity
+     */
+    fun destroy() {
+        ArrayList(viewOwners.keys).forEach { destroyView(it) }
+        idleViews.clear()
+    }
+
+    private fun destroyView(view: POBBannerView) {
+        viewOwners.remove(view)?.let { detachSlot(it) }
+        // Idle view may still be attached to a recycled holder
+        (view.parent as? ViewGroup)?.removeView(view)
+        view.destroy()
+        viewCount--
+    }
+
+    // Slot looses the creative, it should be loaded again when bound
+    private fun detachSlot(feedItem: FeedItem) {
+        slotViews.remove(feedItem)
+        feedItem.bannerState = FeedItem.BannerState.NOT_LOADED
+        feedItem.creativeSize = null
+        onSlotDetached(feedItem)
+    }
+}
@@ -1,12 +1,22 @@
 package com.pubmatic.openwrap.listapp
 
-import com.pubmatic.sdk.openwrap.banner.POBBannerView
+import com.pubmatic.sdk.common.POBAdSize
 
 /**
- * Data class represent feed item.
+ * Data class represent feed item. Banner item holds the descriptor of the banner instead of a banner
+ * view, the view is checked out from BannerViewPool when required. Loaded creative state of the
+ * banner is tracked here.
+ *
+ * Id is stable for the life of the item, it identifies the item across feed updates.
  */
-data class FeedItem(val title: String, val feedType: FeedType, val banner: POBBannerView?,
-                    var isBannerLoaded: Boolean) {
+data class FeedItem(val id: Long, val title: String, val feedType: FeedType,
+                    val banner: BannerDescriptor?) {
+
+    // Load state of the banner creative
+    var bannerState = BannerState.NOT_LOADED
+
+    // Size of the loaded banner creative
+    var creativeSize: POBAdSize? = null
 
     /**
      * Enum defines types of feed
@@ -15,4 +25,14 @@ data class FeedItem(val title: String, val feedType: FeedType, val banner: POBBa
         NEWS,
         BANNER
     }
-}
\ No newline at end of file
+
+    /**
+     * Enum defines load states of banner creative
+     */
+    enum class BannerState {
+        NOT_LOADED,
+        LOADING,
+        LOADED,
+        FAILED
+    }
+}
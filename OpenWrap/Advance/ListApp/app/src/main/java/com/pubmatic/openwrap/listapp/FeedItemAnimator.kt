@@ -0,0 +1,46 @@
+package com.pubmatic.openwrap.listapp
+
+import androidx.recyclerview.widget.DefaultItemAnimator
+import androidx.recyclerview.widget.RecyclerView
+import androidx.recyclerview.widget.RecyclerView.ItemAnimator.ItemHolderInfo
+
+/**
+ * Class definition of item animator for feed list. Changes notified with banner payloads are not
+ * animated, the bound holder is updated in place. Other changes are animated by default animator.
+ */
+class FeedItemAnimator : DefaultItemAnimator() {
+
+    override fun canReuseUpdatedViewHolder(viewHolder: RecyclerView.ViewHolder,
+                                           payloads: MutableList<Any>): Boolean {
+        return isBannerPayload(payloads) || super.canReuseUpdatedViewHolder(viewHolder, payloads)
+    }
+
+    override fun recordPreLayoutInformation(state: RecyclerView.State,
+                                            viewHolder: RecyclerView.ViewHolder,
+                                            changeFlags: Int,
+                                            payloads: MutableList<Any>): ItemHolderInfo {
+        if (isBannerPayload(payloads)) {
+            return BannerPayloadInfo().setFrom(viewHolder)
+        }
+        return super.recordPreLayoutInformation(state, viewHolder, changeFlags, payloads)
+    }
+
+    override fun animateChange(oldHolder: RecyclerView.ViewHolder,
+                               newHolder: RecyclerView.ViewHolder,
+                               preInfo: ItemHolderInfo,
+                               postInfo: ItemHolderInfo): Boolean {
+        if (preInfo is BannerPayloadInfo && oldHolder === newHolder) {
+            // Skip the change animation, holder is already updated
+            dispatchChangeFinished(newHolder, false)
+            return false
+        }
+        return super.animateChange(oldHolder, newHolder, preInfo, postInfo)
+    }
+
+    private fun isBannerPayload(payloads: List<Any>): Boolean {
+        return payloads.isNotEmpty() && payloads.all { it is FeedListAdapter.BannerPayload }
+    }
+
+    // Holder info of a change notified with banner payloads
+    private class BannerPayloadInfo : ItemHolderInfo()
+}
@@ -0,0 +1,156 @@
+package com.pubmatic.openwrap.listapp
+
+import java.util.AbstractList
+import java.util.BitSet
+
+/**
+ * Class definition of feed list, which keeps an index of banner items which are not loaded yet.
+ * Next banner to load is found without scanning the feed, and the index is kept in sync when the
+ * items are inserted or removed. Ids of the items should increase with their position.
+ */
+class FeedList : AbstractList<FeedItem>() {
+
+    companion object {
+        const val NO_POSITION = -1
+    }
+
+    private val items = ArrayList<FeedItem>()
+
+    // Positions of the banner items which are not loaded yet. Banners loaded after being indexed
+    // are removed lazily on lookup.
+    private val pendingBanners = BitSet()
+
+    // All the banners before this position are loaded
+    private var searchFrom = 0
+
+    override val size: Int
+        get() = items.size
+
+    override fun get(index: Int): FeedItem {
+        return items[index]
+    }
+
+    override fun add(index: Int, element: FeedItem) {
+        items.add(index, element)
+        shiftPendingBanners(index, 1)
+        if (isPending(element)) {
+            pendingBanners.set(index)
+            searchFrom = Math.min(searchFrom, index)
+        }
+        modCount++
+    }
+
+    override fun removeAt(index: Int): FeedItem {
+        val removed = items.removeAt(index)
+        pendingBanners.clear(index)
+        shiftPendingBanners(index + 1, -1)
+        modCount++
+        return removed
+    }
+
+    override fun set(index: Int, element: FeedItem): FeedItem {
+        val previous = items.set(index, element)
+        if (isPending(element)) {
+            pendingBanners.set(index)
+            searchFrom = Math.min(searchFrom, index)
+        } else {
+            pendingBanners.clear(index)
+        }
+        return previous
+    }
+
+    override fun clear() {
+        items.clear()
+        pendingBanners.clear()
+        searchFrom = 0
+        modCount++
+    }
+
+    /**
+     * Returns position of the first banner which is not loaded yet, NO_POSITION if all the banners
+     * are loaded.
+     */
+    fun nextPendingBanner(): Int {
+        var position = pendingBanners.nextSetBit(searchFrom)
+        while (position >= 0 && !isPending(items[position])) {
+            // Banner is loaded after being indexed
+            pendingBanners.clear(position)
+            position = pendingBanners.nextSetBit(position + 1)
+        }
+        searchFrom = if (position >= 0) position else items.size
+        return if (position >= 0) position else NO_POSITION
+    }
+
+    /**
+     * Indexes the given banner item again, call it when a loaded banner goes back to not loaded
+     * state in place, e.g. its banner view is given to another slot. Item is found by binary search
+     * on its id, as the ids of the feed items increase with their position.
+     */
+    fun markPending(item: FeedItem) {
+        if (!isPending(item)) {
+            return
+        }
+        val position = positionOf(item)
+        if (position >= 0) {
+            pendingBanners.set(position)
+            searchFrom = Math.min(searchFrom, position)
+        }
+    }
+
+    /**
+     * Returns true if the item at given position is a banner which is not loaded yet
+     */
+    fun isBannerPending(position: Int): Boolean {
+        return pendingBanners.get(position) && isPending(items[position])
+    }
+
+    /**
+     * Returns a copy of the feed, along with its index of banners which are not loaded yet. Copy is
+     * not modified by the subsequent updates of the feed, e.g. to submit a change other than an
+     * append to the adapter.
+     */
+    fun snapshot(): FeedList {
+        val copy = FeedList()
+        copy.items.addAll(items)
+        copy.pendingBanners.or(pendingBanners)
+        copy.searchFrom = searchFrom
+        return copy
+    }
+
+    // Returns position of given item, -1 if it is not in the feed
+    private fun positionOf(item: FeedItem): Int {
+        var low = 0
+        var high = items.size - 1
+        while (low <= high) {
+            val mid = (low + high) ushr 1
+            val id = items[mid].id
+            when {
+                id < item.id -> low = mid + 1
+                id > item.id -> high = mid - 1
+                else -> return if (items[mid] === item) mid else -1
+            }
+        }
+        return -1
+    }
+
+    private fun isPending(item: FeedItem): Boolean {
+        return item.feedType == FeedItem.FeedType.BANNER && item.bannerState == FeedItem.BannerState.NOT_LOADED
+    }
+
+    // Moves the indexed positions from given position onwards by given offset
+    private fun shiftPendingBanners(from: Int, offset: Int) {
+        val length = pendingBanners.length()
+        if (from < length) {
+            val tail = pendingBanners.get(from, length)
+            pendingBanners.clear(from, length)
+            var bit = tail.nextSetBit(0)
+            while (bit >= 0) {
+                pendingBanners.set(from + bit + offset)
+                bit = tail.nextSetBit(bit + 1)
+            }
+        }
+        if (searchFrom >= from) {
+            searchFrom = Math.max(0, searchFrom + offset)
+        }
+    }
+}
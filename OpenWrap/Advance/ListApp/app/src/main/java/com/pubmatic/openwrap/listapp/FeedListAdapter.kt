@@ -6,23 +6,98 @@ import android.view.View
 import android.view.ViewGroup
 import android.widget.LinearLayout
 import android.widget.TextView
+import androidx.recyclerview.widget.AsyncListDiffer
+import androidx.recyclerview.widget.DiffUtil
 import androidx.recyclerview.widget.RecyclerView
 import androidx.recyclerview.widget.RecyclerView.ViewHolder
 import com.pubmatic.sdk.common.POBError
-import com.pubmatic.sdk.common.utility.POBUtils
 import com.pubmatic.sdk.openwrap.banner.POBBannerView
+import java.util.IdentityHashMap
 
 /**
- * Class definition demonstrate recycler adapter to show feed list
+ * Class definition demonstrate recycler adapter to show feed list. Feed is updated by submitting a
+ * new list, difference with the current list is computed on background thread and items keep their
+ * holders (and banner slots) across the updates using stable ids. Items appended at the end of the
+ * current list are notified in place instead, so a new page neither copies nor diffs the feed.
  */
-class FeedListAdapter(val feedItems: ArrayList<FeedItem>): RecyclerView.Adapter<ViewHolder>() {
+class FeedListAdapter(private val bannerViewPool: BannerViewPool)
+    : RecyclerView.Adapter<ViewHolder>() {
 
     companion object{
         val TAG: String = "FeedListAdapter"
+
+        // Items are same if they have same id, banner load state is not part of the contents
+        private val DIFF_CALLBACK = object : DiffUtil.ItemCallback<FeedItem>() {
+            override fun areItemsTheSame(oldItem: FeedItem, newItem: FeedItem): Boolean {
+                return oldItem.id == newItem.id
+            }
+
+            override fun areContentsTheSame(oldItem: FeedItem, newItem: FeedItem): Boolean {
+                return oldItem == newItem
+            }
+        }
+    }
+
+    private val differ = AsyncListDiffer(this, DIFF_CALLBACK)
+
+    /**
+     * Feed items currently displayed
+     */
+    val feedItems: List<FeedItem>
+        get() = differ.currentList
+
+    init {
+        setHasStableIds(true)
+    }
+
+    /**
+     * Enum defines payloads of partial banner updates
+     */
+    enum class BannerPayload {
+        // Banner is loaded, its creative size may have changed
+        CREATIVE_SIZE_CHANGED,
+        // Banner failed to load
+        BANNER_FAILED
     }
 
     private var onBannerBindListener: OnBannerBindListener? = null
 
+    private var onBannerLoadListener: OnBannerLoadListener? = null
+
+    // Banner dimensions in pixels per creative size
+    private val bannerSizeCache = BannerSizeCache()
+
+    // Holders of the bound banner slots, to find the adapter position of a slot
+    private val boundBannerHolders = IdentityHashMap<FeedItem, BannerViewHolder>()
+
+    // Single listener for all the banners, events are dispatched to the slot whose creative is
+    // held by the banner
+    private val bannerListener = object : POBBannerView.POBBannerViewListener(){
+        override fun onAdReceived(view: POBBannerView?) {
+            // let block to check if banner instance is not null
+            view?.let {
+                // Track loaded creative on the slot which the view is loaded for
+                bannerViewPool.getOwner(it)?.let { feedItem ->
+                    feedItem.bannerState = FeedItem.BannerState.LOADED
+                    feedItem.creativeSize = it.creativeSize
+                    notifyBannerChanged(feedItem, BannerPayload.CREATIVE_SIZE_CHANGED)
+                }
+                onBannerLoadListener?.onBannerLoadFinished(it)
+            }
+        }
+
+        override fun onAdFailed(p0: POBBannerView?, p1: POBError?) {
+            Log.d(TAG, "Unable to load ad, Error: "+p1?.errorMessage)
+            p0?.let {
+                bannerViewPool.getOwner(it)?.let { feedItem ->
+                    feedItem.bannerState = FeedItem.BannerState.FAILED
+                    notifyBannerChanged(feedItem, BannerPayload.BANNER_FAILED)
+                }
+                onBannerLoadListener?.onBannerLoadFinished(it)
+            }
+        }
+    }
+
     override fun onCreateViewHolder(parent: ViewGroup, viewType: Int): ViewHolder {
         // Create view holder according to feed type
         if(viewType == FeedItem.FeedType.BANNER.ordinal){
@@ -46,6 +121,28 @@ class FeedListAdapter(val feedItems: ArrayList<FeedItem>): RecyclerView.Adapter<
         return feedItems.size
     }
 
+    override fun getItemId(position: Int): Long {
+        return feedItems.get(position).id
+    }
+
+    /**
+     * Submits the new feed list, e.g. a modified FeedList.snapshot(). Neither the current nor the
+     * new list should be modified until the callback, which is invoked once the list is displayed.
+     */
+    fun submitList(feedList: List<FeedItem>, commitCallback: Runnable? = null){
+        differ.submitList(feedList, commitCallback)
+    }
+
+    /**
+     * Notifies that given number of items are appended in place at the end of the current list,
+     * while no submitted list is pending
+     */
+    fun notifyItemsAppended(count: Int){
+        if(count > 0){
+            notifyItemRangeInserted(feedItems.size - count, count)
+        }
+    }
+
     override fun onBindViewHolder(holder: ViewHolder, position: Int) {
         val feedItem = feedItems.get(position)
         if(holder is BannerViewHolder){
@@ -53,29 +150,33 @@ class FeedListAdapter(val feedItems: ArrayList<FeedItem>): RecyclerView.Adapter<
             // Notify banner is getting bind
             onBannerBindListener?.onBannerBind()
 
-            // Get banner from feed item
-            val banner = feedItem.banner
-
-            // Remove child banner view
-            parent.removeAllViews()
-
-            // If you are scrolling so fast sometime remove view takes time before that you can not
-            // add before remove it parent, hence exception occurs
-            try {
-                // Attach banner to view holder view
-                parent.addView(banner)
-            }catch (e: IllegalStateException){
-                Log.e(TAG, "Not able to render banner: "+e.message)
+            // Check out banner view of the slot from pool, it is returned when holder is recycled
+            holder.feedItem?.let {
+                if(it !== feedItem){
+                    bannerViewPool.release(it)
+                    boundBannerHolders.remove(it)
+                }
             }
+            val banner = bannerViewPool.acquire(feedItem)
+            holder.feedItem = feedItem
+            holder.banner = banner
+            boundBannerHolders[feedItem] = holder
 
-
-            // Set banner listener
-            setBannerListener(banner)
+            // Attach banner to view holder view
+            banner?.let {
+                attachBanner(parent, it)
+            }
 
             // In case if banner is already loaded, view holder is recycled,
             // set banner dimension explicitly
             banner?.let{
-                updateBannerDimensions(it)
+                updateBannerDimensions(it, feedItem)
+                updateBannerVisibility(it, feedItem)
+            }
+
+            // Load the slot if it is not prefetched, or its creative is lost to another slot
+            if(feedItem.bannerState == FeedItem.BannerState.NOT_LOADED){
+                loadBanner(feedItem)
             }
 
         }else if(holder is NewsViewHolder){
@@ -83,6 +184,57 @@ class FeedListAdapter(val feedItems: ArrayList<FeedItem>): RecyclerView.Adapter<
         }
     }
 
+    override fun onBindViewHolder(holder: ViewHolder, position: Int, payloads: MutableList<Any>) {
+        // Load state change of a banner only updates the banner view, rest of the bind is skipped
+        if(holder is BannerViewHolder && payloads.isNotEmpty() && payloads.all { it is BannerPayload }){
+            val banner = holder.banner
+            val feedItem = holder.feedItem
+            if(banner != null && feedItem === feedItems.get(position)){
+                payloads.forEach { payload ->
+                    when(payload){
+                        BannerPayload.CREATIVE_SIZE_CHANGED -> updateBannerDimensions(banner, feedItem)
+                        BannerPayload.BANNER_FAILED -> {}
+                    }
+                }
+                updateBannerVisibility(banner, feedItem)
+                return
+            }
+        }
+        super.onBindViewHolder(holder, position, payloads)
+    }
+
+    override fun onViewRecycled(holder: ViewHolder) {
+        if(holder is BannerViewHolder){
+            // Return banner to pool, it stays attached to the holder till it is bound elsewhere. If
+            // the holder is bound to the same slot again, banner is not re-attached.
+            holder.feedItem?.let {
+                bannerViewPool.release(it)
+                boundBannerHolders.remove(it)
+            }
+            holder.feedItem = null
+            holder.banner = null
+        }
+    }
+
+    // Hides the banner of failed slot
+    private fun updateBannerVisibility(banner: POBBannerView, feedItem: FeedItem){
+        banner.visibility = if(feedItem.bannerState == FeedItem.BannerState.FAILED) View.GONE else View.VISIBLE
+    }
+
+    // Attaches banner to the holder view, only if it is not already attached. Banner is detached
+    // from its previous parent first, e.g. holder which is not recycled yet while fast scrolling,
+    // and its existing layout params are reused.
+    private fun attachBanner(parent: LinearLayout, banner: POBBannerView){
+        if(banner.parent === parent){
+            return
+        }
+        (banner.parent as? ViewGroup)?.removeView(banner)
+        if(parent.childCount > 0){
+            parent.removeAllViews()
+        }
+        parent.addView(banner)
+    }
+
     /**
      * Setter to provide banner is getting bind on
      */
@@ -90,33 +242,64 @@ class FeedListAdapter(val feedItems: ArrayList<FeedItem>): RecyclerView.Adapter<
         onBannerBindListener = listenerOn
     }
 
-    // Load and update banner dimension on banner receive callback
-    private fun setBannerListener(banner: POBBannerView?){
-        banner?.setListener(object : POBBannerView.POBBannerViewListener(){
-            override fun onAdReceived(view: POBBannerView?) {
-                // let block to check if banner instance is not null
-                view?.let {
-                    updateBannerDimensions(it)
-                }
-            }
+    /**
+     * Setter to provide banner load is finished
+     */
+    fun setBannerLoadListener(listener: OnBannerLoadListener){
+        onBannerLoadListener = listener
+    }
 
-            override fun onAdFailed(p0: POBBannerView?, p1: POBError?) {
-                Log.d(TAG, "Unable to load ad, Error: "+p1?.errorMessage)
-            }
-        })
+    /**
+     * Loads the banner of given feed item, returns the banner view which is loading
+     */
+    fun loadBanner(feedItem: FeedItem): POBBannerView?{
+        val isBound = bannerViewPool.isCheckedOut(feedItem)
+        val banner = bannerViewPool.acquire(feedItem) ?: return null
+        // Set listener before loading, banner may not be bound yet
+        banner.setListener(bannerListener)
+        feedItem.bannerState = FeedItem.BannerState.LOADING
+        banner.loadAd()
+        if(!isBound){
+            // Prefetched slot is not bound yet, keep the view in pool till it is bound
+            bannerViewPool.release(feedItem)
+        }
+        return banner
     }
 
+    // Notifies the change of banner slot, if it is bound. Slot which is not bound picks up its state
+    // on bind.
+    private fun notifyBannerChanged(feedItem: FeedItem, payload: BannerPayload){
+        val position = boundBannerHolders[feedItem]?.adapterPosition ?: RecyclerView.NO_POSITION
+        if(position != RecyclerView.NO_POSITION){
+            notifyItemChanged(position, payload)
+        }
+    }
 
+    /**
+     * Drops the cached banner dimensions, call it on configuration change
+     */
+    fun onConfigurationChanged(){
+        bannerSizeCache.invalidate()
+    }
 
-    private fun updateBannerDimensions(banner: POBBannerView){
-        // Get ad size from banner
-        val adSize = banner.creativeSize
+    // Updates banner layout params only if the creative size is changed, so that rebinding a banner
+    // does not request a new layout
+    private fun updateBannerDimensions(banner: POBBannerView, feedItem: FeedItem){
+        // Get loaded creative size of the slot
+        val adSize = feedItem.creativeSize
         adSize?.let {
-            val width: Int = POBUtils.convertDpToPixel(adSize.adWidth)
-            val height: Int = POBUtils.convertDpToPixel(adSize.adHeight)
-            // Create layout params which is required set banner dimensions
-            val layoutParams = LinearLayout.LayoutParams(width, height)
-            banner.layoutParams = layoutParams
+            val size = bannerSizeCache.getPixelSize(adSize, banner.resources.displayMetrics)
+            val width: Int = BannerSizeCache.width(size)
+            val height: Int = BannerSizeCache.height(size)
+            val layoutParams = banner.layoutParams as? LinearLayout.LayoutParams
+            if(layoutParams == null){
+                // Create layout params which is required set banner dimensions
+                banner.layoutParams = LinearLayout.LayoutParams(width, height)
+            }else if(layoutParams.width != width || layoutParams.height != height){
+                layoutParams.width = width
+                layoutParams.height = height
+                banner.layoutParams = layoutParams
+            }
         }
     }
 
@@ -130,6 +313,16 @@ class FeedListAdapter(val feedItems: ArrayList<FeedItem>): RecyclerView.Adapter<
         fun onBannerBind()
     }
 
+    /**
+     * Interface definition to notify banner load is finished
+     */
+    interface OnBannerLoadListener{
+        /**
+         * Notifies banner is either loaded or failed to load
+         */
+        fun onBannerLoadFinished(banner: POBBannerView)
+    }
+
     /**
      * View holder class to manager news
      */
@@ -143,5 +336,10 @@ class FeedListAdapter(val feedItems: ArrayList<FeedItem>): RecyclerView.Adapter<
     /**
      * View holder class to manager Banner
      */
-    class BannerViewHolder(view: View): ViewHolder(view)
+    class BannerViewHolder(view: View): ViewHolder(view){
+        // Banner slot bound to the holder
+        var feedItem: FeedItem? = null
+        // Banner view of the slot
+        var banner: POBBannerView? = null
+    }
 }
\ No newline at end of file
@@ -3,6 +3,7 @@ package com.pubmatic.openwrap.listapp
 import android.Manifest
 import android.content.Context
 import android.content.pm.PackageManager
+import android.content.res.Configuration
 import android.os.Build
 import android.os.Bundle
 import androidx.appcompat.app.AppCompatActivity
@@ -33,11 +34,40 @@ class MainActivity : AppCompatActivity() {
     private val PROFILE_ID = 1757
 
     // Feed list
-    private var feedList = ArrayList<FeedItem>()
+    private val feedList = FeedList()
+
+    // Id of the next feed item
+    private var nextFeedId = 0L
+
+    // Number of news items in the first content page and in the subsequent pages
+    private val FIRST_PAGE_SIZE = 7
+    private val PAGE_SIZE = 10
+
+    // Next content page is appended when the number of news items below the screen drops to it
+    private val PAGE_LOAD_THRESHOLD = 3
+
+    // Places the banners in the news stream, first banner after 2 news items and then after
+    // every 2 news items
+    private val adInsertionEngine = AdInsertionEngine(AdPlacementPolicy(firstPosition = 2,
+        interval = 2, maxAdsPerSession = 10))
+
+    // Banner descriptor is shared by the banner items, banner view is created when the banner
+    // is first bound or prefetched
+    private val bannerDescriptor = BannerDescriptor(PUB_ID, PROFILE_ID, OPENWRAP_AD_UNIT_ID,
+        POBAdSize.BANNER_SIZE_300x250)
+
+    // True while appending of the next content page is posted
+    private var isAppendingPage = false
 
     // recycler view
     private var recyclerView: RecyclerView? = null
 
+    // Prefetches the banners ahead of the visible items
+    private var prefetchScheduler: BannerPrefetchScheduler? = null
+
+    // Pool of banner views shared by the banner items of the feed
+    private var bannerViewPool: BannerViewPool? = null
+
     // To check app already has the requested permission.
     private fun hasPermissions(context: Context?, permissions: Array<String>): Boolean {
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M && context != null) {
@@ -64,21 +94,50 @@ class MainActivity : AppCompatActivity() {
         val  layoutManager = LinearLayoutManager(this)
         recyclerView?.layoutManager = layoutManager
 
+        // Banner load state changes are applied in place, without change animation
+        recyclerView?.itemAnimator = FeedItemAnimator()
+
         // Create divider and add it to recycler view
         val divider = DividerItemDecoration(this, layoutManager.orientation)
         recyclerView?.addItemDecoration(divider)
 
-        // Create feeds
-        feedList = createFeeds()
+        // Create banner view pool, banner views are created on demand when a banner slot is bound
+        // or prefetched. Slots which lose their creative are loaded again by the prefetch.
+        val pool = BannerViewPool(onSlotDetached = { feedList.markPending(it) }) { banner ->
+            POBBannerView(this, banner.pubId, banner.profileId, banner.adUnitId, banner.adSize)
+        }
+        bannerViewPool = pool
 
-        // Create adapter by passing feedlist and set it to recycler view
-        val adapter = FeedListAdapter(feedList)
+        // Create adapter and set it to recycler view. Feed list is displayed in place, pages are
+        // appended to it and notified, other changes should be submitted as a new list.
+        val adapter = FeedListAdapter(pool)
+        adapter.submitList(feedList)
 
         // Set adapter callback to get banner bind callback
         adapter.setBannerLoadedListener(OnBannerBindCallback())
 
         recyclerView?.adapter = adapter
 
+        // Prefetch banners as the feed scrolls, it also pre-loads the banners of first screen
+        val scheduler = BannerPrefetchScheduler(adapter)
+        adapter.setBannerLoadListener(scheduler)
+        recyclerView?.addOnScrollListener(scheduler)
+        prefetchScheduler = scheduler
+
+        // Append next content page when the feed is scrolled close to its end
+        recyclerView?.addOnScrollListener(object : RecyclerView.OnScrollListener() {
+            override fun onScrolled(recyclerView: RecyclerView, dx: Int, dy: Int) {
+                if (dy > 0) {
+                    appendPageIfNeeded(layoutManager.findLastVisibleItemPosition())
+                }
+            }
+        })
+
+        // Create feeds from the first content page, pre-load the banners of first screen after
+        // the first frame, so that banner views which are not visible are not created before it
+        appendContentPage(FIRST_PAGE_SIZE)
+        recyclerView?.post { scheduler.schedule(0, 0) }
+
         // Ask permission from user for location and write external storage
         if (!hasPermissions(this, PERMISSIONS)) {
             val MULTIPLE_PERMISSIONS_REQUEST_CODE = 123
@@ -87,43 +146,55 @@ class MainActivity : AppCompatActivity() {
         }
     }
 
+    override fun onConfigurationChanged(newConfig: Configuration) {
+        super.onConfigurationChanged(newConfig)
+        // Activity handles the configuration changes itself, banner dimensions depend on density
+        (recyclerView?.adapter as? FeedListAdapter)?.onConfigurationChanged()
+    }
+
     override fun onDestroy() {
         super.onDestroy()
-        // Clean up, banner instance when not in use or before finishing current activity.
-        feedList.forEach { feed ->
-            feed.banner?.destroy()
-        }
+        // Clean up, banner instances when not in use or before finishing current activity.
+        bannerViewPool?.destroy()
     }
 
-    // Create feed list by adding news and banner items
-    // Here you can add multiple banner in any sequence
-    private fun createFeeds(): ArrayList<FeedItem>{
-        val feedList = ArrayList<FeedItem>()
-        // Initialize Banner no 1 and load it(Pre-load first banner)
-        val banner1 = POBBannerView(this, PUB_ID, PROFILE_ID, OPENWRAP_AD_UNIT_ID, POBAdSize.BANNER_SIZE_300x250)
-        banner1.loadAd()
-
-        // Banner no 2
-        val banner2 = POBBannerView(this, PUB_ID, PROFILE_ID, OPENWRAP_AD_UNIT_ID, POBAdSize.BANNER_SIZE_300x250)
-
-        // Banner no 3
-        val banner3 = POBBannerView(this, PUB_ID, PROFILE_ID, OPENWRAP_AD_UNIT_ID, POBAdSize.BANNER_SIZE_300x250)
-
-        feedList.add(FeedItem("News 1", FeedItem.FeedType.NEWS, null, false))
-        feedList.add(FeedItem("News 2", FeedItem.FeedType.NEWS, null, false))
-
-        // Since we are pre-loading banner 1, mark FeedItem's isBannerLoaded flag to true
-        feedList.add(FeedItem("Banner 1", FeedItem.FeedType.BANNER, banner1, true))
-
-        feedList.add(FeedItem("News 3", FeedItem.FeedType.NEWS, null, false))
-        feedList.add(FeedItem("News 4", FeedItem.FeedType.NEWS, null, false))
-        feedList.add(FeedItem("Banner 2", FeedItem.FeedType.BANNER, banner2, false))
+    // Appends next content page if the news items below the last visible item are running out
+    private fun appendPageIfNeeded(lastVisible: Int) {
+        if (isAppendingPage || lastVisible == RecyclerView.NO_POSITION) {
+            return
+        }
+        val remaining = adInsertionEngine.contentCount -
+                adInsertionEngine.getContentCountBefore(lastVisible + 1)
+        if (remaining <= PAGE_LOAD_THRESHOLD) {
+            // Adapter should not be notified from a scroll callback, append after it
+            isAppendingPage = true
+            recyclerView?.post {
+                appendContentPage(PAGE_SIZE)
+                isAppendingPage = false
+            }
+        }
+    }
 
-        feedList.add(FeedItem("News 5", FeedItem.FeedType.NEWS, null, false))
-        feedList.add(FeedItem("News 6", FeedItem.FeedType.NEWS, null, false))
-        feedList.add(FeedItem("Banner 3", FeedItem.FeedType.BANNER, banner3, false))
-        feedList.add(FeedItem("News 7", FeedItem.FeedType.NEWS, null, false))
-        return feedList
+    // Appends a page of news items to the feed along with the banners placed by the insertion
+    // engine. Banners of a page are placed after the existing items, hence the page is appended at
+    // the end of feed list.
+    private fun appendContentPage(pageSize: Int) {
+        val firstPosition = adInsertionEngine.itemCount
+        adInsertionEngine.appendContent(pageSize)
+
+        for (position in firstPosition until adInsertionEngine.itemCount) {
+            if (adInsertionEngine.isAd(position)) {
+                val bannerNumber = position - adInsertionEngine.getContentCountBefore(position) + 1
+                feedList.add(FeedItem(nextFeedId++, "Banner $bannerNumber",
+                    FeedItem.FeedType.BANNER, bannerDescriptor))
+            } else {
+                val newsNumber = adInsertionEngine.getContentPosition(position) + 1
+                feedList.add(FeedItem(nextFeedId++, "News $newsNumber", FeedItem.FeedType.NEWS,
+                    null))
+            }
+        }
+        (recyclerView?.adapter as? FeedListAdapter)?.notifyItemsAppended(
+            adInsertionEngine.itemCount - firstPosition)
     }
 
     /**
@@ -135,14 +206,12 @@ class MainActivity : AppCompatActivity() {
         }
     }
 
-    // Loads next banner if not loaded and mark it as loaded, else skip
+    // Loads next banner if not loaded and mark it as loaded, else skip. Banners are usually
+    // prefetched by the scheduler before they are bound, this is a fallback e.g. for fast scrolling.
     private fun loadNextBanner(){
-        feedList.forEach { feedItem ->
-            if(feedItem.feedType == FeedItem.FeedType.BANNER && !feedItem.isBannerLoaded){
-                feedItem.banner?.loadAd()
-                feedItem.isBannerLoaded = true
-                return
-            }
+        val position = feedList.nextPendingBanner()
+        if(position != FeedList.NO_POSITION){
+            prefetchScheduler?.load(feedList[position])
         }
     }
 
@@ -1,6 +1,7 @@
 package com.pubmatic.openwrap.app;
 
 import android.os.Bundle;
+import android.os.SystemClock;
 import androidx.appcompat.app.AppCompatActivity;
 import android.util.Log;
 import android.view.View;
@@ -22,6 +23,9 @@ public class DFPVideoInterstitialActivity extends AppCompatActivity {
     private static final String DFP_AD_UNIT_ID = "/15671365/pm_sdk/PMSDK-Demo-App-Interstitial";
 
     private POBInterstitial interstitial;
+    private InterstitialPreloadCache interstitialCache;
+    // Time at which the interstitial is requested, 0 once it is ready
+    private long loadRequestTime;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -40,27 +44,14 @@ public class DFPVideoInterstitialActivity extends AppCompatActivity {
         // Need not set this for every ad request(of any ad type)
         OpenWrapSDK.setApplicationInfo(appInfo);
 
-        // Create an interstitial custom event handler for your ad server. Make sure
-        // you use separate event handler objects to create each interstitial ad instance.
-        // For example, The code below creates an event handler for DFP ad server.
-        DFPInterstitialEventHandler eventHandler = new DFPInterstitialEventHandler(this, DFP_AD_UNIT_ID);
-
-        // Create  interstitial instance by passing activity context and
-        interstitial = new POBInterstitial(this, PUB_ID,
-                PROFILE_ID,
-                OPENWRAP_AD_UNIT_ONE,
-                eventHandler);
-
-        // Set Optional listener
-        interstitial.setListener(new DFPVideoInterstitialActivity.POBInterstitialListener());
-
+        // Interstitials are pre-loaded by the application scoped cache
+        interstitialCache = ((SampleApplication) getApplication()).getInterstitialCache();
 
         // Load Ad button
         findViewById(R.id.loadAdBtn).setOnClickListener(new View.OnClickListener() {
             @Override
             public void onClick(View v) {
-                findViewById(R.id.showAdBtn).setEnabled(false);
-                interstitial.loadAd();
+                loadInterstitialAd();
 
             }
         });
@@ -76,6 +67,49 @@ public class DFPVideoInterstitialActivity extends AppCompatActivity {
 
     }
 
+    /**
+     * To load interstitial ad call this method, it takes a ready interstitial from the cache if
+     * available, else loads a new one.
+     **/
+    private void loadInterstitialAd() {
+        findViewById(R.id.showAdBtn).setEnabled(false);
+        loadRequestTime = SystemClock.uptimeMillis();
+        if (null != interstitial) {
+            interstitial.destroy();
+        }
+
+        interstitial = interstitialCache.obtain(PUB_ID, PROFILE_ID, OPENWRAP_AD_UNIT_ONE);
+        if (null != interstitial) {
+            interstitial.setListener(new DFPVideoInterstitialActivity.POBInterstitialListener());
+            onInterstitialReady();
+            return;
+        }
+
+        // Create an interstitial custom event handler for your ad server. Make sure
+        // you use separate event handler objects to create each interstitial ad instance.
+        // For example, The code below creates an event handler for DFP ad server.
+        DFPInterstitialEventHandler eventHandler = new DFPInterstitialEventHandler(this, DFP_AD_UNIT_ID);
+
+        // Create  interstitial instance by passing activity context and
+        interstitial = new POBInterstitial(this, PUB_ID,
+                PROFILE_ID,
+                OPENWRAP_AD_UNIT_ONE,
+                eventHandler);
+
+        // Set Optional listener
+        interstitial.setListener(new DFPVideoInterstitialActivity.POBInterstitialListener());
+        interstitial.loadAd();
+    }
+
+    // Enables the show button and records the time taken by the interstitial to get ready
+    private void onInterstitialReady() {
+        findViewById(R.id.showAdBtn).setEnabled(true);
+        if (loadRequestTime > 0) {
+            interstitialCache.recordTimeToShow(SystemClock.uptimeMillis() - loadRequestTime);
+            loadRequestTime = 0;
+        }
+    }
+
     /**
      * To show interstitial ad call this method
      **/
@@ -106,7 +140,7 @@ public class DFPVideoInterstitialActivity extends AppCompatActivity {
             Log.d(TAG, "onAdReceived");
             //Method gets called when ad gets loaded in container
             //Here, you can show interstitial ad to user
-            findViewById(R.id.showAdBtn).setEnabled(true);
+            onInterstitialReady();
         }
 
         // Callback method notifies an error encountered while loading or rendering an ad.
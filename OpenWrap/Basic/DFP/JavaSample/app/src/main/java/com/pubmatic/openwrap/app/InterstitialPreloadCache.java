@@ -0,0 +1,306 @@
+package com.pubmatic.openwrap.app;
+
+import android.app.Activity;
+import android.app.Application;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.pubmatic.openwrap.app.dfpevent.DFPInterstitialEventHandler;
+import com.pubmatic.sdk.common.POBError;
+import com.pubmatic.sdk.openwrap.interstitial.POBInterstitial;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Application scoped cache of pre-loaded interstitials, keyed by pub ID, profile ID and OpenWrap
+ * ad unit. It keeps the configured number of interstitials loading or ready per ad unit, so that an
+ * activity gets a ready interstitial and can show it instantly.
+ * <p>
+ * Interstitials are created with an activity context, since showing an interstitial starts the
+ * full screen ad activity from its context. The first resumed activity hosts the cached
+ * interstitials, i.e. pre-loading starts only once an activity is resumed. When the host activity is
+ * destroyed, including a configuration change, its cached interstitials are dropped and loaded
+ * again with the next resumed activity. Interstitials handed out already are owned by the caller
+ * and are not affected, hence the caller should destroy them along with its own activity.
+ * <p>
+ * Expired interstitials are loaded again in the background, and an interstitial handed out to an
+ * activity is replaced by a new one. Failed loads are retried after {@link #RETRY_DELAY}.
+ * <p>
+ * Cache should be used on main thread, where the OpenWrap SDK delivers the interstitial callbacks.
+ */
+public class InterstitialPreloadCache {
+
+    private static final String TAG = "InterstitialCache";
+
+    /**
+     * Default number of interstitials pre-loaded per ad unit
+     */
+    public static final int DEFAULT_PRELOAD_COUNT = 1;
+
+    /**
+     * Time (in milli-sec) to wait before loading a failed interstitial again
+     */
+    public static final long RETRY_DELAY = 30000;
+
+    private final int preloadCount;
+    /**
+     * Activity the cached interstitials are created with, null until an activity is resumed
+     */
+    private Activity hostActivity;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final Map<String, AdUnitPool> pools = new HashMap<>();
+
+    private long hitCount;
+    private long missCount;
+    private long refillCount;
+    private long timeToShowCount;
+    private long totalTimeToShow;
+
+    /**
+     * Tracks the host activity of the cached interstitials
+     */
+    private final Application.ActivityLifecycleCallbacks lifecycleCallbacks =
+            new Application.ActivityLifecycleCallbacks() {
+        @Override
+        public void onActivityCreated(Activity activity, Bundle savedInstanceState) {
+        }
+
+        @Override
+        public void onActivityStarted(Activity activity) {
+        }
+
+        @Override
+        public void onActivityResumed(Activity activity) {
+            if (hostActivity == null) {
+                hostActivity = activity;
+                for (AdUnitPool pool : pools.values()) {
+                    pool.fill();
+                }
+            }
+        }
+
+        @Override
+        public void onActivityPaused(Activity activity) {
+        }
+
+        @Override
+        public void onActivityStopped(Activity activity) {
+        }
+
+        @Override
+        public void onActivitySaveInstanceState(Activity activity, Bundle outState) {
+        }
+
+        @Override
+        public void onActivityDestroyed(Activity activity) {
+            if (activity == hostActivity) {
+                // Cached interstitials must not outlive their context
+                hostActivity = null;
+                for (AdUnitPool pool : pools.values()) {
+                    pool.destroy();
+                }
+            }
+        }
+    };
+
+    /**
+     * Constructor
+     *
+     * @param application  application, used to track the host activity of the interstitials
+     * @param preloadCount number of interstitials to pre-load per ad unit
+     */
+    public InterstitialPreloadCache(Application application, int preloadCount) {
+        if (preloadCount <= 0) {
+            throw new IllegalArgumentException("Preload count should be positive");
+        }
+        this.preloadCount = preloadCount;
+        application.registerActivityLifecycleCallbacks(lifecycleCallbacks);
+    }
+
+    /**
+     * Starts pre-loading the interstitials for the given ad unit, if not started already. Loading
+     * is deferred until an activity is resumed.
+     *
+     * @param pubId       publisher ID
+     * @param profileId   profile ID
+     * @param adUnitId    OpenWrap ad unit ID
+     * @param dfpAdUnitId DFP ad unit ID
+     */
+    public void preload(String pubId, int profileId, String adUnitId, String dfpAdUnitId) {
+        String key = getKey(pubId, profileId, adUnitId);
+        if (pools.containsKey(key)) {
+            return;
+        }
+        AdUnitPool pool = new AdUnitPool(pubId, profileId, adUnitId, dfpAdUnitId);
+        pools.put(key, pool);
+        pool.fill();
+    }
+
+    /**
+     * Hands out a ready interstitial of the given ad unit and starts loading its replacement. The
+     * caller owns the returned interstitial, i.e. it should set its own listener and destroy it.
+     *
+     * @param pubId     publisher ID
+     * @param profileId profile ID
+     * @param adUnitId  OpenWrap ad unit ID
+     * @return ready interstitial, null if none of the interstitials is ready
+     */
+    public POBInterstitial obtain(String pubId, int profileId, String adUnitId) {
+        AdUnitPool pool = pools.get(getKey(pubId, profileId, adUnitId));
+        POBInterstitial interstitial = null;
+        if (pool != null) {
+            interstitial = pool.take();
+        }
+        if (interstitial != null) {
+            hitCount++;
+            pool.fill();
+        } else {
+            missCount++;
+        }
+        return interstitial;
+    }
+
+    /**
+     * Records the time from the request of an interstitial to the time it is ready to show, i.e.
+     * zero for a cache hit and the load time for a miss.
+     *
+     * @param timeToShow time in milli-sec
+     */
+    public void recordTimeToShow(long timeToShow) {
+        timeToShowCount++;
+        totalTimeToShow += timeToShow;
+    }
+
+    /**
+     * @return number of times a ready interstitial is handed out
+     */
+    public long getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * @return number of times no interstitial was ready
+     */
+    public long getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * @return fraction of the requests served with a ready interstitial
+     */
+    public double getHitRate() {
+        long requestCount = hitCount + missCount;
+        return requestCount > 0 ? (double) hitCount / requestCount : 0.0d;
+    }
+
+    /**
+     * @return number of times an expired interstitial is loaded again
+     */
+    public long getRefillCount() {
+        return refillCount;
+    }
+
+    /**
+     * @return average time to show in milli-sec
+     */
+    public long getAverageTimeToShow() {
+        return timeToShowCount > 0 ? totalTimeToShow / timeToShowCount : 0;
+    }
+
+    /**
+     * Destroys all the cached interstitials
+     */
+    public void clear() {
+        mainHandler.removeCallbacksAndMessages(null);
+        for (AdUnitPool pool : pools.values()) {
+            pool.destroy();
+        }
+        pools.clear();
+    }
+
+    private static String getKey(String pubId, int profileId, String adUnitId) {
+        return pubId + "|" + profileId + "|" + adUnitId;
+    }
+
+    /**
+     * Interstitials of an ad unit along with the listener to keep them loaded
+     */
+    private class AdUnitPool extends POBInterstitial.POBInterstitialListener {
+
+        private final String pubId;
+        private final int profileId;
+        private final String adUnitId;
+        private final String dfpAdUnitId;
+        private final List<POBInterstitial> interstitials = new ArrayList<>();
+
+        AdUnitPool(String pubId, int profileId, String adUnitId, String dfpAdUnitId) {
+            this.pubId = pubId;
+            this.profileId = profileId;
+            this.adUnitId = adUnitId;
+            this.dfpAdUnitId = dfpAdUnitId;
+        }
+
+        // Creates and loads the interstitials up to the preload count, once an activity hosts them
+        void fill() {
+            while (hostActivity != null && interstitials.size() < preloadCount) {
+                // Make sure to use separate event handler objects for each interstitial instance
+                DFPInterstitialEventHandler eventHandler = new DFPInterstitialEventHandler(hostActivity, dfpAdUnitId);
+                POBInterstitial interstitial = new POBInterstitial(hostActivity, pubId, profileId,
+                        adUnitId, eventHandler);
+                interstitial.setListener(this);
+                interstitials.add(interstitial);
+                interstitial.loadAd();
+            }
+        }
+
+        // Removes and returns the first ready interstitial
+        POBInterstitial take() {
+            for (int i = 0; i < interstitials.size(); i++) {
+                if (interstitials.get(i).isReady()) {
+                    return interstitials.remove(i);
+                }
+            }
+            return null;
+        }
+
+        void destroy() {
+            for (POBInterstitial interstitial : interstitials) {
+                interstitial.destroy();
+            }
+            interstitials.clear();
+        }
+
+        @Override
+        public void onAdReceived(POBInterstitial ad) {
+            Log.d(TAG, "Interstitial ready for " + adUnitId);
+        }
+
+        @Override
+        public void onAdFailed(final POBInterstitial ad, POBError error) {
+            Log.e(TAG, "Interstitial failed for " + adUnitId + " with error - " + error.toString());
+            mainHandler.postDelayed(new Runnable() {
+                @Override
+                public void run() {
+                    // Interstitial may have been destroyed in the meantime
+                    if (interstitials.contains(ad)) {
+                        ad.loadAd();
+                    }
+                }
+            }, RETRY_DELAY);
+        }
+
+        @Override
+        public void onAdExpired(POBInterstitial ad) {
+            // Refill the expired interstitial in the background
+            if (interstitials.contains(ad)) {
+                refillCount++;
+                ad.loadAd();
+            }
+        }
+    }
+}
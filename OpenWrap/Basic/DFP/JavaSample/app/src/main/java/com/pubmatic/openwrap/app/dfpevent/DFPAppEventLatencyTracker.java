@@ -0,0 +1,164 @@
+package com.pubmatic.openwrap.app.dfpevent;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * This class is compatible with OpenWrap SDK v1.5.0.
+ * This class tracks the delay between onAdLoaded() and onAppEvent() callbacks of DFP SDK per ad
+ * unit and estimates how long an event handler should wait for the PubMatic win signal. Delays are
+ * kept in a fixed size histogram per ad unit (10 milli-sec buckets), older samples are decayed
+ * gradually so that the estimate follows the recent behaviour of the DFP line items.
+ * <p>
+ * Set an instance on {@link DFPWinSignalArbiter#setLatencyTracker(DFPAppEventLatencyTracker)}
+ * to enable the adaptive wait in all the DFP event handlers.
+ */
+public final class DFPAppEventLatencyTracker {
+
+    /**
+     * Width of a histogram bucket in milli-sec
+     */
+    private static final int BUCKET_WIDTH = 10;
+    /**
+     * Number of histogram buckets, delays above the last bucket are added to the last bucket
+     */
+    private static final int BUCKET_COUNT = 200;
+    /**
+     * Number of samples after which all the buckets are halved
+     */
+    private static final int DECAY_THRESHOLD = 1000;
+    /**
+     * Default number of samples required before the estimate is used
+     */
+    private static final int DEFAULT_MIN_SAMPLES = 20;
+
+    private final double percentile;
+    private final long minTimeout;
+    private final long maxTimeout;
+    private int minSamples = DEFAULT_MIN_SAMPLES;
+
+    private final Map<String, LatencyHistogram> histograms = new HashMap<>();
+
+    /**
+     * Constructor with default configuration, i.e. 95th percentile bounded between 100 and 400
+     * milli-sec.
+     */
+    public DFPAppEventLatencyTracker() {
+        this(0.95d, 100, DFPWinSignalArbiter.DEFAULT_WIN_SIGNAL_TIMEOUT);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param percentile percentile of observed delays to wait for, in range (0, 1]
+     * @param minTimeout lower bound of the wait in milli-sec
+     * @param maxTimeout upper bound of the wait in milli-sec
+     */
+    public DFPAppEventLatencyTracker(double percentile, long minTimeout, long maxTimeout) {
+        if (percentile <= 0.0d || percentile > 1.0d) {
+            throw new IllegalArgumentException("Percentile should be in range (0, 1]");
+        }
+        if (minTimeout < 0 || maxTimeout < minTimeout) {
+            throw new IllegalArgumentException("Invalid timeout bounds");
+        }
+        this.percentile = percentile;
+        this.minTimeout = minTimeout;
+        this.maxTimeout = maxTimeout;
+    }
+
+    /**
+     * Sets the number of samples required for an ad unit before the estimate is used. Until then
+     * the upper bound is used as wait time.
+     *
+     * @param minSamples number of samples
+     */
+    public void setMinSamples(int minSamples) {
+        this.minSamples = Math.max(1, minSamples);
+    }
+
+    /**
+     * Records the delay between onAdLoaded() and onAppEvent() for the given ad unit.
+     *
+     * @param adUnitId DFP ad unit ID
+     * @param latency  delay in milli-sec, 0 if onAppEvent() is received before onAdLoaded()
+     */
+    public synchronized void record(String adUnitId, long latency) {
+        LatencyHistogram histogram = histograms.get(adUnitId);
+        if (histogram == null) {
+            histogram = new LatencyHistogram();
+            histograms.put(adUnitId, histogram);
+        }
+        histogram.add(latency);
+    }
+
+    /**
+     * Returns the current estimate of the configured percentile for the given ad unit.
+     *
+     * @param adUnitId DFP ad unit ID
+     * @return estimated delay in milli-sec, -1 if enough samples are not available yet
+     */
+    public synchronized long getEstimate(String adUnitId) {
+        LatencyHistogram histogram = histograms.get(adUnitId);
+        if (histogram == null || histogram.total < minSamples) {
+            return -1;
+        }
+        return histogram.percentile(percentile);
+    }
+
+    /**
+     * Returns the time to wait for onAppEvent() for the given ad unit, bounded by the configured
+     * min/max values.
+     *
+     * @param adUnitId DFP ad unit ID
+     * @return wait time in milli-sec
+     */
+    public long getTimeout(String adUnitId) {
+        long estimate = getEstimate(adUnitId);
+        if (estimate < 0) {
+            return maxTimeout;
+        }
+        return Math.max(minTimeout, Math.min(maxTimeout, estimate));
+    }
+
+    /**
+     * Clears all the recorded samples
+     */
+    public synchronized void reset() {
+        histograms.clear();
+    }
+
+    /**
+     * Fixed size latency histogram with periodic decay
+     */
+    private static final class LatencyHistogram {
+        private final int[] buckets = new int[BUCKET_COUNT];
+        private int total;
+
+        void add(long latency) {
+            int index = (int) Math.min(BUCKET_COUNT - 1, Math.max(0, latency) / BUCKET_WIDTH);
+            buckets[index]++;
+            total++;
+            if (total >= DECAY_THRESHOLD) {
+                total = 0;
+                for (int i = 0; i < BUCKET_COUNT; i++) {
+                    buckets[i] >>= 1;
+                    total += buckets[i];
+                }
+            }
+        }
+
+        long percentile(double percentile) {
+            // Rank of the sample at given percentile, rounded up
+            int rank = (int) Math.ceil(percentile * total);
+            int count = 0;
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                count += buckets[i];
+                if (count >= rank) {
+                    // Upper edge of the bucket, so that the sample itself is covered
+                    return (long) (i + 1) * BUCKET_WIDTH;
+                }
+            }
+            return (long) BUCKET_COUNT * BUCKET_WIDTH;
+        }
+    }
+}
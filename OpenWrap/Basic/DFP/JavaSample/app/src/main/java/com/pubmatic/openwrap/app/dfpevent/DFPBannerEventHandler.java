@@ -1,8 +1,7 @@
 package com.pubmatic.openwrap.app.dfpevent;
 
 import android.content.Context;
-import android.os.Handler;
-import android.os.Looper;
+import android.os.SystemClock;
 import android.text.TextUtils;
 
 import com.google.android.gms.ads.AdListener;
@@ -18,10 +17,6 @@ import com.pubmatic.sdk.openwrap.banner.POBBannerEvent;
 import com.pubmatic.sdk.openwrap.banner.POBBannerEventListener;
 import com.pubmatic.sdk.openwrap.core.POBBid;
 
-import java.util.Map;
-import java.util.Timer;
-import java.util.TimerTask;
-
 /**
  * This class is compatible with OpenWrap SDK v1.5.0.
  * This class implements the communication between the OpenWrap SDK and the DFP SDK for a given ad
@@ -43,14 +38,60 @@ public class DFPBannerEventHandler extends AdListener implements POBBannerEvent,
      */
     private DFPConfigListener dfpConfigListener;
     /**
-     * Flag to identify if PubMatic bid wins the current impression
+     * Optional floor table to skip waiting for onAppEvent() if bid can not win PubMatic line item
+     */
+    private DFPPriceFloorTable priceFloorTable;
+    /**
+     * Resolves the winner of the current impression, exactly once per ad request
+     */
+    private final DFPWinResolution winResolution = new DFPWinResolution();
+    /**
+     * ID of the ad request made by the latest requestAd(), DFP callbacks are resolved against it
+     */
+    private volatile int activeRequestId;
+    /**
+     * ID of the request for which the win signal deadline is scheduled
      */
-    private Boolean notifiedBidWin;
+    private volatile int deadlineRequestId;
+    /**
+     * Deadline task to fail the ad request if DFP SDK does not respond in time. It is scheduled on
+     * the shared DFPRequestWatchdog and reused for every ad request.
+     */
+    private final Runnable requestDeadline = new Runnable() {
+        @Override
+        public void run() {
+            onRequestTimeout();
+        }
+    };
+    /**
+     * ID of the request for which the request deadline is scheduled
+     */
+    private volatile int requestDeadlineId;
     private boolean isAppEventExpected;
     /**
-     * Timer object to synchronize the onAppEvent() of DFP SDK with onAdLoaded()
+     * Time (SystemClock.uptimeMillis()) at which onAdLoaded() is received, 0 if not received yet
+     */
+    private long adLoadedTime;
+    /**
+     * Transfers bid targeting into DFP ad request
      */
-    private Timer timer;
+    private final DFPTargetingTransfer targetingTransfer = new DFPTargetingTransfer(TAG);
+    /**
+     * Deadline task to synchronize the onAppEvent() of DFP SDK with onAdLoaded(). It is scheduled
+     * on the shared DFPWinSignalArbiter and reused for every ad request.
+     */
+    private final Runnable winSignalDeadline = new Runnable() {
+        @Override
+        public void run() {
+            if (notifyPOBAboutAdReceived(deadlineRequestId)) {
+                DFPWinSignalArbiter.getInstance().recordTimeout();
+            }
+        }
+    };
+    /**
+     * DFP ad unit ID
+     */
+    private final String adUnitId;
     /**
      * DFP Banner ad view
      */
@@ -68,6 +109,7 @@ public class DFPBannerEventHandler extends AdListener implements POBBannerEvent,
      * @param adSizes  ad sizes for banner
      */
     public DFPBannerEventHandler(Context context, String adUnitId, AdSize... adSizes) {
+        this.adUnitId = adUnitId;
         dfpAdView = new PublisherAdView(context.getApplicationContext());
         dfpAdView.setAdUnitId(adUnitId);
         dfpAdView.setAdSizes(adSizes);
@@ -87,41 +129,66 @@ public class DFPBannerEventHandler extends AdListener implements POBBannerEvent,
         dfpConfigListener = listener;
     }
 
+    /**
+     * Sets the table of PubMatic line item floors configured at DFP. If set, event handler waits
+     * for onAppEvent() only when bid price can win a PubMatic line item of this ad unit, else DFP
+     * is considered as winner as soon as onAdLoaded() is received.
+     *
+     * @param floorTable PubMatic line item floor table, can be shared by multiple event handlers
+     */
+    public void setPriceFloorTable(DFPPriceFloorTable floorTable) {
+        priceFloorTable = floorTable;
+    }
+
     private void resetDelay() {
-        if (timer != null) {
-            timer.cancel();
-        }
-        timer = null;
+        DFPWinSignalArbiter.getInstance().cancel(winSignalDeadline);
     }
 
-    private void scheduleDelay() {
+    private void scheduleDelay(int requestId) {
+        deadlineRequestId = requestId;
+        DFPWinSignalArbiter arbiter = DFPWinSignalArbiter.getInstance();
+        arbiter.schedule(winSignalDeadline, arbiter.getWinSignalTimeout(adUnitId));
+    }
 
-        resetDelay();
+    private void scheduleRequestDeadline(int requestId) {
+        requestDeadlineId = requestId;
+        DFPRequestWatchdog.getInstance().schedule(requestDeadline, adUnitId);
+    }
 
-        TimerTask task = new TimerTask() {
-            @Override
-            public void run() {
-                notifyPOBAboutAdReceived();
-            }
-        };
-        timer = new Timer();
-        timer.schedule(task, 400);
+    private void cancelRequestDeadline() {
+        DFPRequestWatchdog.getInstance().cancel(requestDeadline);
+    }
 
+    private void onRequestTimeout() {
+        if (winResolution.resolveFailure(requestDeadlineId)) {
+            resetDelay();
+            DFPRequestWatchdog watchdog = DFPRequestWatchdog.getInstance();
+            watchdog.recordTimeout(adUnitId);
+            DFPCircuitBreaker.getInstance().recordFailure(adUnitId);
+            // DFP SDK does not allow to cancel the ad request, its late callbacks are dropped as
+            // the request is already resolved
+            sendErrorToPOB(new POBError(POBError.TIMEOUT_ERROR, "DFP SDK did not respond in "
+                    + watchdog.getTimeout(adUnitId) + " milli-sec"));
+        }
     }
 
-    private void notifyPOBAboutAdReceived() {
+    private boolean notifyPOBAboutAdReceived(int requestId) {
         // If onAppEvent is not called within 400 milli-sec, consider that DFP wins
-        if (notifiedBidWin == null) {
-            // Notify POB SDK about DFP ad win state and set the state
-            notifiedBidWin = false;
-            new Handler(Looper.getMainLooper()).post(new Runnable() {
-                @Override
-                public void run() {
-                    if (eventListener != null) {
-                        eventListener.onAdServerWin(dfpAdView);
-                    }
-                }
-            });
+        if (winResolution.resolveAdServerWin(requestId)) {
+            // Notify POB SDK about DFP ad win state
+            if (eventListener != null) {
+                eventListener.onAdServerWin(dfpAdView);
+            }
+            return true;
+        }
+        return false;
+    }
+
+    private void recordWinSignalLatency() {
+        if (isAppEventExpected) {
+            // onAppEvent() before onAdLoaded() is recorded as zero delay
+            long latency = adLoadedTime > 0 ? SystemClock.uptimeMillis() - adLoadedTime : 0;
+            DFPWinSignalArbiter.getInstance().recordWinSignalLatency(adUnitId, latency);
         }
     }
 
@@ -134,6 +201,17 @@ public class DFPBannerEventHandler extends AdListener implements POBBannerEvent,
     // ------- Overridden methods from POBBannerEvent -------
     @Override
     public void requestAd(POBBid bid) {
+        // Fail immediately while DFP keeps failing for this ad unit
+        DFPCircuitBreaker circuitBreaker = DFPCircuitBreaker.getInstance();
+        if (!circuitBreaker.allowRequest(adUnitId)) {
+            resetDelay();
+            cancelRequestDeadline();
+            winResolution.reset();
+            sendErrorToPOB(new POBError(POBError.NETWORK_ERROR, "DFP circuit is open, retrying in "
+                    + circuitBreaker.getRetryDelay(adUnitId) + " milli-sec"));
+            return;
+        }
+
         // Reset the flag
         isAppEventExpected = false;
 
@@ -152,21 +230,17 @@ public class DFPBannerEventHandler extends AdListener implements POBBannerEvent,
         if (null != bid) {
 
             // Logging details of bid objects for debug purpose.
-            PMLog.debug(TAG, bid.toString());
-
-            Map<String, String> targeting = bid.getTargetingInfo();
-            if (targeting != null && !targeting.isEmpty()) {
-                // using for-each loop for iteration over Map.entrySet()
-                for (Map.Entry<String, String> entry : targeting.entrySet()) {
-                    requestBuilder.addCustomTargeting(entry.getKey(), entry.getValue());
-                    PMLog.debug(TAG, "Targeting param [" + entry.getKey() + "] = " + entry.getValue());
-                }
+            if (DFPTargetingTransfer.isDebugLogEnabled()) {
+                PMLog.debug(TAG, bid.toString());
             }
 
+            // Add bid targeting to the DFP request, reusing the snapshot if the targeting is unchanged
+            targetingTransfer.transfer(bid, requestBuilder);
+
             // Save this flag for future reference. It will be referred to wait for onAppEvent, only
-            // if POB delivers non-zero bid to DFP SDK.
+            // if POB delivers non-zero bid to DFP SDK, which can win a PubMatic line item.
             double price = bid.getPrice();
-            if (price > 0.0d) {
+            if (price > 0.0d && (priceFloorTable == null || priceFloorTable.canWin(adUnitId, price))) {
                 isAppEventExpected = true;
             }
         }
@@ -174,9 +248,25 @@ public class DFPBannerEventHandler extends AdListener implements POBBannerEvent,
         final PublisherAdRequest adRequest = requestBuilder.build();
 
         // Publisher/App developer can add extra targeting parameters to dfpAdView here.
-        notifiedBidWin = null;
+        resetDelay();
+        int requestId = winResolution.start();
+        activeRequestId = requestId;
+        adLoadedTime = 0;
+
+        // Fail the request if DFP SDK does not respond in time
+        scheduleRequestDeadline(requestId);
 
         // Load DFP ad request
+        loadAd(adRequest);
+    }
+
+    /**
+     * Hands over the ad request to DFP SDK. Benchmarks override it to measure requestAd() without
+     * a network request.
+     *
+     * @param adRequest DFP ad request
+     */
+    void loadAd(PublisherAdRequest adRequest) {
         dfpAdView.loadAd(adRequest);
     }
 
@@ -220,13 +310,23 @@ public class DFPBannerEventHandler extends AdListener implements POBBannerEvent,
     public void onAppEvent(String key, String s1) {
         PMLog.info(TAG, "onAppEvent()");
         if (TextUtils.equals(key, PUBMATIC_WIN_KEY)) {
-            // If onAppEvent is called before onAdLoaded(), it means POB bid wins
-            if (notifiedBidWin == null) {
-                notifiedBidWin = true;
+            // If onAppEvent is called before the deadline, it means POB bid wins
+            int requestId = activeRequestId;
+            if (winResolution.resolvePartnerWin(requestId)) {
+                // Latency is recorded only for the signals of the current request, a stale
+                // signal would skew the adaptive wait time
+                recordWinSignalLatency();
+                resetDelay();
+                cancelRequestDeadline();
+                DFPCircuitBreaker.getInstance().recordSuccess(adUnitId);
+                DFPWinSignalArbiter.getInstance().recordAppEventWin();
                 eventListener.onOpenWrapPartnerWin();
-            } else if (!notifiedBidWin) {
+            } else if (winResolution.getOutcome(requestId) == DFPWinResolution.Outcome.AD_SERVER_WIN) {
                 // In this case onAppEvent is called in wrong order and within 400 milli-sec
                 // Hence, notify POB SDK about DFP ad win state
+                // Late signal is still recorded at its real delay, else the samples are truncated
+                // at the current wait time and the adaptive wait time could never grow again
+                recordWinSignalLatency();
                 sendErrorToPOB(new POBError(POBError.OPENWRAP_SIGNALING_ERROR,
                         "DFP ad server mismatched bid win signal"));
             }
@@ -236,6 +336,8 @@ public class DFPBannerEventHandler extends AdListener implements POBBannerEvent,
     @Override
     public void destroy() {
         resetDelay();
+        cancelRequestDeadline();
+        winResolution.reset();
         if (null != dfpAdView) {
             dfpAdView.destroy();
         }
@@ -247,6 +349,18 @@ public class DFPBannerEventHandler extends AdListener implements POBBannerEvent,
     @Override
     public void onAdFailedToLoad(int errCode) {
         PMLog.info(TAG, "onAdFailedToLoad()");
+        if (!winResolution.resolveFailure(activeRequestId)) {
+            PMLog.debug(TAG, "Ignoring onAdFailedToLoad(), ad request is already resolved");
+            return;
+        }
+        cancelRequestDeadline();
+
+        // Only network errors count towards opening the circuit, other errors are responses
+        if (errCode == PublisherAdRequest.ERROR_CODE_NETWORK_ERROR) {
+            DFPCircuitBreaker.getInstance().recordFailure(adUnitId);
+        } else {
+            DFPCircuitBreaker.getInstance().recordSuccess(adUnitId);
+        }
 
         if (eventListener != null) {
             switch (errCode) {
@@ -285,18 +399,28 @@ public class DFPBannerEventHandler extends AdListener implements POBBannerEvent,
     @Override
     public void onAdLoaded() {
         PMLog.info(TAG, "onAdServerWin()");
+        int requestId = activeRequestId;
+        // Late response of a timed out request neither counts as a success nor resolves the
+        // current request
+        if (!winResolution.isLoading(requestId)) {
+            PMLog.debug(TAG, "Ignoring onAdLoaded(), ad request is already resolved");
+            return;
+        }
+        // DFP SDK responded, wait for the win signal is bounded separately
+        cancelRequestDeadline();
+        DFPCircuitBreaker.getInstance().recordSuccess(adUnitId);
         if (eventListener != null) {
 
-            // Wait only if onAppEvent() is not already called.
-            if (notifiedBidWin == null) {
-
-                // Check if POB bid delivers non-zero bids to DFP, then only wait
-                if (isAppEventExpected) {
-                    // Wait for 400 milli-sec to get onAppEvent before conveying to POB SDK
-                    scheduleDelay();
-                } else {
-                    notifyPOBAboutAdReceived();
+            // Check if POB bid delivers non-zero bids to DFP, then only wait. Wait only if
+            // onAppEvent() is not already called.
+            if (isAppEventExpected) {
+                if (winResolution.awaitSignal(requestId)) {
+                    adLoadedTime = SystemClock.uptimeMillis();
+                    // Wait for 400 milli-sec (or adaptive wait time) to get onAppEvent before conveying to POB SDK
+                    scheduleDelay(requestId);
                 }
+            } else {
+                notifyPOBAboutAdReceived(requestId);
             }
         }
     }
@@ -0,0 +1,125 @@
+package com.pubmatic.openwrap.app.dfpevent;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * This class is compatible with OpenWrap SDK v1.5.0.
+ * Table of the lowest PubMatic line item price configured at DFP, per ad unit. DFP event handlers
+ * use it to identify the bids which can not win any PubMatic line item, so they need not wait for
+ * onAppEvent() after onAdLoaded(). Bid price is first mapped to the line item price bucket using
+ * the price granularity of the ad unit, then compared with the floor.
+ * <p>
+ * The same table can be shared by all the DFP event handlers of the app.
+ */
+public class DFPPriceFloorTable {
+
+    /**
+     * Interface to map a bid price to the PubMatic line item price bucket at DFP. Implement it if
+     * the line items are not set up at a fixed increment.
+     */
+    public interface PriceGranularity {
+        /**
+         * @param price bid price
+         * @return price of the line item which targets the given bid price
+         */
+        double toLineItemPrice(double price);
+    }
+
+    /**
+     * Granularity where each bid price targets the line item of same price
+     */
+    public static final PriceGranularity EXACT = new PriceGranularity() {
+        @Override
+        public double toLineItemPrice(double price) {
+            return price;
+        }
+    };
+
+    private final Map<String, Double> floors = new HashMap<>();
+    private final Map<String, PriceGranularity> granularities = new HashMap<>();
+    private double defaultFloor;
+    private PriceGranularity defaultGranularity = EXACT;
+
+    /**
+     * Returns the granularity where line items are created at a fixed price increment, e.g. 0.10
+     * creates buckets 0.10, 0.20, 0.30... and bid price is rounded down to the bucket.
+     *
+     * @param increment price increment of line items
+     * @return price granularity
+     */
+    public static PriceGranularity increment(final double increment) {
+        if (increment <= 0.0d) {
+            throw new IllegalArgumentException("Increment should be greater than 0");
+        }
+        return new PriceGranularity() {
+            @Override
+            public double toLineItemPrice(double price) {
+                // Small epsilon avoids rounding 0.3 (0.29999...) down to 0.2
+                return Math.floor(price / increment + 1e-9) * increment;
+            }
+        };
+    }
+
+    /**
+     * Sets the floor used for ad units which do not have their own floor.
+     *
+     * @param floor lowest PubMatic line item price
+     */
+    public synchronized void setDefaultFloor(double floor) {
+        defaultFloor = floor;
+    }
+
+    /**
+     * Sets the granularity used for ad units which do not have their own granularity.
+     *
+     * @param granularity price granularity, null resets it to {@link #EXACT}
+     */
+    public synchronized void setDefaultGranularity(PriceGranularity granularity) {
+        defaultGranularity = granularity != null ? granularity : EXACT;
+    }
+
+    /**
+     * Sets the lowest PubMatic line item price for the given ad unit.
+     *
+     * @param adUnitId DFP ad unit ID
+     * @param floor    lowest PubMatic line item price
+     */
+    public synchronized void setFloor(String adUnitId, double floor) {
+        floors.put(adUnitId, floor);
+    }
+
+    /**
+     * Sets the price granularity of the PubMatic line items for the given ad unit.
+     *
+     * @param adUnitId    DFP ad unit ID
+     * @param granularity price granularity
+     */
+    public synchronized void setGranularity(String adUnitId, PriceGranularity granularity) {
+        if (granularity != null) {
+            granularities.put(adUnitId, granularity);
+        } else {
+            granularities.remove(adUnitId);
+        }
+    }
+
+    /**
+     * Checks if the bid of given price can win a PubMatic line item of the given ad unit.
+     *
+     * @param adUnitId DFP ad unit ID
+     * @param price    bid price
+     * @return true if bid targets a PubMatic line item, else false
+     */
+    public synchronized boolean canWin(String adUnitId, double price) {
+        if (price <= 0.0d) {
+            return false;
+        }
+        PriceGranularity granularity = granularities.get(adUnitId);
+        if (granularity == null) {
+            granularity = defaultGranularity;
+        }
+        Double floor = floors.get(adUnitId);
+        double lineItemPrice = granularity.toLineItemPrice(price);
+        return lineItemPrice > 0.0d && lineItemPrice >= (floor != null ? floor : defaultFloor);
+    }
+}
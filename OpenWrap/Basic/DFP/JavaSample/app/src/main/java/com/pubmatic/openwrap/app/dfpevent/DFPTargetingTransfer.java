@@ -0,0 +1,135 @@
+package com.pubmatic.openwrap.app.dfpevent;
+
+import com.google.android.gms.ads.doubleclick.PublisherAdRequest;
+import com.pubmatic.sdk.common.OpenWrapSDK;
+import com.pubmatic.sdk.common.log.PMLog;
+import com.pubmatic.sdk.openwrap.core.POBBid;
+
+import java.util.Map;
+
+/**
+ * This class is compatible with OpenWrap SDK v1.5.0.
+ * Transfers the targeting information of a POBBid into a DFP ad request builder. Targeting of the
+ * last bid is kept as a frozen snapshot (key/value arrays), so when a bid with the same targeting is
+ * requested again, e.g. on refresh, it is not rebuilt. Snapshot is compared with the targeting by
+ * contents, so a targeting map modified in place is never served from a stale snapshot. The check
+ * does not allocate, i.e. a refresh with the same targeting creates no garbage here. Log messages
+ * are built only when debug logs are enabled.
+ * <p>
+ * Each event handler should use its own instance, it is not thread safe.
+ */
+public final class DFPTargetingTransfer {
+
+    private final String tag;
+    private String[] keys = new String[0];
+    private String[] values = new String[0];
+    private int size;
+    /**
+     * Number of times the snapshot is built
+     */
+    private int snapshotBuildCount;
+
+    /**
+     * Constructor
+     *
+     * @param tag log tag of the event handler
+     */
+    public DFPTargetingTransfer(String tag) {
+        this.tag = tag;
+    }
+
+    /**
+     * Adds the targeting information of given bid as custom targeting to the request builder.
+     *
+     * @param bid            OpenWrap bid
+     * @param requestBuilder DFP ad request builder
+     */
+    public void transfer(POBBid bid, PublisherAdRequest.Builder requestBuilder) {
+        int count = snapshot(bid.getTargetingInfo());
+        boolean debug = isDebugLogEnabled();
+        for (int index = 0; index < count; index++) {
+            requestBuilder.addCustomTargeting(keys[index], values[index]);
+            if (debug) {
+                PMLog.debug(tag, "Targeting param [" + keys[index] + "] = " + values[index]);
+            }
+        }
+    }
+
+    /**
+     * Clears the cached snapshot
+     */
+    public void reset() {
+        for (int index = 0; index < size; index++) {
+            keys[index] = null;
+            values[index] = null;
+        }
+        size = 0;
+    }
+
+    /**
+     * @return true if debug logs of OpenWrap SDK are enabled
+     */
+    static boolean isDebugLogEnabled() {
+        OpenWrapSDK.LogLevel logLevel = OpenWrapSDK.getLogLevel();
+        return logLevel != null && logLevel.ordinal() <= OpenWrapSDK.LogLevel.Debug.ordinal();
+    }
+
+    /**
+     * Builds the snapshot of given targeting, unless the current snapshot has the same contents.
+     *
+     * @param targeting targeting information of the bid
+     * @return number of targeting params in the snapshot
+     */
+    int snapshot(Map<String, String> targeting) {
+        if (!isSnapshotValid(targeting)) {
+            buildSnapshot(targeting);
+        }
+        return size;
+    }
+
+    /**
+     * @return number of times the snapshot is built
+     */
+    int getSnapshotBuildCount() {
+        return snapshotBuildCount;
+    }
+
+    // Snapshot params are looked up in the targeting instead of iterating its entries, so that the
+    // check does not allocate an iterator on every request. Keys of the snapshot are distinct,
+    // hence the same size and all the keys found means the same set of keys.
+    private boolean isSnapshotValid(Map<String, String> targeting) {
+        int count = targeting != null ? targeting.size() : 0;
+        if (count != size) {
+            return false;
+        }
+        for (int index = 0; index < count; index++) {
+            String value = targeting.get(keys[index]);
+            if (!equals(values[index], value)
+                    || (value == null && !targeting.containsKey(keys[index]))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void buildSnapshot(Map<String, String> targeting) {
+        reset();
+        snapshotBuildCount++;
+        if (targeting != null && !targeting.isEmpty()) {
+            int count = targeting.size();
+            if (keys.length < count) {
+                keys = new String[count];
+                values = new String[count];
+            }
+            for (Map.Entry<String, String> entry : targeting.entrySet()) {
+                keys[size] = entry.getKey();
+                values[size] = entry.getValue();
+                size++;
+            }
+        }
+    }
+
+    private static boolean equals(String first, String second) {
+        return first == null ? second == null : first.equals(second);
+    }
+}
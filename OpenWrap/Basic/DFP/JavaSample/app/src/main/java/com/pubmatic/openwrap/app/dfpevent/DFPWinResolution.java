@@ -0,0 +1,211 @@
+package com.pubmatic.openwrap.app.dfpevent;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class is compatible with OpenWrap SDK v1.5.0.
+ * Lock-free state machine to resolve the winner of a DFP ad request, used by the DFP event
+ * handlers. A request moves IDLE -> LOADING -> (WAITING_SIGNAL) -> RESOLVED, and only the caller
+ * whose compare-and-set moves the request to RESOLVED should notify the OpenWrap SDK. Hence exactly
+ * one of partner win, ad server win or failure is notified per request, even if the DFP callbacks
+ * and the win signal deadline race with each other.
+ * <p>
+ * Every request gets a new request ID, transitions with the ID of an older request are ignored, so
+ * late callbacks of a previous request can not resolve the current one.
+ */
+public final class DFPWinResolution {
+
+    /**
+     * States of an ad request
+     */
+    public enum State {
+        /**
+         * No ad request is made yet, or the event handler is destroyed
+         */
+        IDLE,
+        /**
+         * Ad request is made to DFP, waiting for onAdLoaded() or onAppEvent()
+         */
+        LOADING,
+        /**
+         * DFP ad is loaded, waiting for the PubMatic win signal i.e. onAppEvent()
+         */
+        WAITING_SIGNAL,
+        /**
+         * Winner of the ad request is resolved
+         */
+        RESOLVED
+    }
+
+    /**
+     * Outcome of a resolved ad request
+     */
+    public enum Outcome {
+        /**
+         * Ad request is not resolved yet
+         */
+        NONE,
+        /**
+         * PubMatic bid wins, i.e. onAppEvent() is received
+         */
+        PARTNER_WIN,
+        /**
+         * DFP ad wins
+         */
+        AD_SERVER_WIN,
+        /**
+         * DFP ad request failed
+         */
+        FAILED
+    }
+
+    private static final State[] STATES = State.values();
+    private static final Outcome[] OUTCOMES = Outcome.values();
+    private static final int STATE_BITS = 2;
+    private static final int OUTCOME_BITS = 2;
+    private static final int REQUEST_SHIFT = STATE_BITS + OUTCOME_BITS;
+    private static final long STATE_MASK = (1L << STATE_BITS) - 1;
+    private static final long OUTCOME_MASK = (1L << OUTCOME_BITS) - 1;
+
+    /**
+     * Request ID, outcome and state packed in a single value, so that they change atomically
+     */
+    private final AtomicLong value = new AtomicLong(pack(0, Outcome.NONE, State.IDLE));
+
+    /**
+     * Starts a new ad request, any unresolved previous request is abandoned.
+     *
+     * @return ID of the new request
+     */
+    public int start() {
+        while (true) {
+            long current = value.get();
+            int requestId = getRequestId(current) + 1;
+            if (value.compareAndSet(current, pack(requestId, Outcome.NONE, State.LOADING))) {
+                return requestId;
+            }
+        }
+    }
+
+    /**
+     * Moves the request from LOADING to WAITING_SIGNAL, i.e. DFP ad is loaded and the win signal
+     * is expected.
+     *
+     * @param requestId ID returned by {@link #start()}
+     * @return true if the caller should wait for the win signal
+     */
+    public boolean awaitSignal(int requestId) {
+        return transition(requestId, State.LOADING, State.LOADING, Outcome.NONE, State.WAITING_SIGNAL);
+    }
+
+    /**
+     * Resolves the request as PubMatic bid win.
+     *
+     * @param requestId ID returned by {@link #start()}
+     * @return true if the caller should notify the partner win
+     */
+    public boolean resolvePartnerWin(int requestId) {
+        return resolve(requestId, Outcome.PARTNER_WIN);
+    }
+
+    /**
+     * Resolves the request as DFP ad win.
+     *
+     * @param requestId ID returned by {@link #start()}
+     * @return true if the caller should notify the ad server win
+     */
+    public boolean resolveAdServerWin(int requestId) {
+        return resolve(requestId, Outcome.AD_SERVER_WIN);
+    }
+
+    /**
+     * Resolves the request as failure.
+     *
+     * @param requestId ID returned by {@link #start()}
+     * @return true if the caller should notify the failure
+     */
+    public boolean resolveFailure(int requestId) {
+        return resolve(requestId, Outcome.FAILED);
+    }
+
+    /**
+     * Moves to IDLE, any unresolved request is abandoned.
+     */
+    public void reset() {
+        while (true) {
+            long current = value.get();
+            if (value.compareAndSet(current, pack(getRequestId(current), Outcome.NONE, State.IDLE))) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Checks if the given request is the latest one and DFP has not responded to it yet.
+     *
+     * @param requestId ID returned by {@link #start()}
+     * @return true if the request is loading
+     */
+    public boolean isLoading(int requestId) {
+        long current = value.get();
+        return getRequestId(current) == requestId
+                && STATES[(int) (current & STATE_MASK)] == State.LOADING;
+    }
+
+    /**
+     * @return ID of the latest request
+     */
+    public int getRequestId() {
+        return getRequestId(value.get());
+    }
+
+    /**
+     * @return state of the latest request
+     */
+    public State getState() {
+        return STATES[(int) (value.get() & STATE_MASK)];
+    }
+
+    /**
+     * Returns the outcome of the given request.
+     *
+     * @param requestId ID returned by {@link #start()}
+     * @return outcome, NONE if the request is not resolved or is not the latest request
+     */
+    public Outcome getOutcome(int requestId) {
+        long current = value.get();
+        if (getRequestId(current) != requestId) {
+            return Outcome.NONE;
+        }
+        return OUTCOMES[(int) ((current >>> STATE_BITS) & OUTCOME_MASK)];
+    }
+
+    // Resolves the request if it is loading or waiting for the win signal
+    private boolean resolve(int requestId, Outcome outcome) {
+        return transition(requestId, State.LOADING, State.WAITING_SIGNAL, outcome, State.RESOLVED);
+    }
+
+    private boolean transition(int requestId, State from, State alternateFrom, Outcome outcome,
+                               State to) {
+        while (true) {
+            long current = value.get();
+            State state = STATES[(int) (current & STATE_MASK)];
+            if (getRequestId(current) != requestId || (state != from && state != alternateFrom)) {
+                return false;
+            }
+            if (value.compareAndSet(current, pack(requestId, outcome, to))) {
+                return true;
+            }
+        }
+    }
+
+    private static int getRequestId(long value) {
+        return (int) (value >>> REQUEST_SHIFT);
+    }
+
+    private static long pack(int requestId, Outcome outcome, State state) {
+        return ((requestId & 0xFFFFFFFFL) << REQUEST_SHIFT)
+                | ((long) outcome.ordinal() << STATE_BITS)
+                | state.ordinal();
+    }
+}
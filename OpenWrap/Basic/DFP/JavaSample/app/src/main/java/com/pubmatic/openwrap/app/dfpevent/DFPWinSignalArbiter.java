@@ -0,0 +1,152 @@
+package com.pubmatic.openwrap.app.dfpevent;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class is compatible with OpenWrap SDK v1.5.0.
+ * Shared arbiter used by all the DFP event handlers to wait for the PubMatic win signal
+ * (onAppEvent()) after DFP SDK delivers onAdLoaded(). All the deadlines are posted on a single
+ * main looper handler, so no thread is created per ad request and the win/loss decision is always
+ * taken on the main thread, where DFP SDK delivers its callbacks.
+ */
+public final class DFPWinSignalArbiter {
+
+    /**
+     * Default time (in milli-sec) to wait for onAppEvent() after onAdLoaded()
+     */
+    public static final long DEFAULT_WIN_SIGNAL_TIMEOUT = 400;
+
+    private static DFPWinSignalArbiter instance;
+
+    /**
+     * Main looper handler, shared by all the deadlines
+     */
+    private final Handler mainHandler;
+    /**
+     * Number of times onAppEvent() is received before the deadline
+     */
+    private final AtomicLong appEventWinCount = new AtomicLong();
+    /**
+     * Number of times the deadline expired without onAppEvent()
+     */
+    private final AtomicLong timeoutCount = new AtomicLong();
+    /**
+     * Optional tracker to adapt the wait time as per observed onAppEvent() delays
+     */
+    private volatile DFPAppEventLatencyTracker latencyTracker;
+
+    private DFPWinSignalArbiter() {
+        mainHandler = new Handler(Looper.getMainLooper());
+    }
+
+    /**
+     * Returns the shared arbiter instance
+     *
+     * @return DFPWinSignalArbiter instance
+     */
+    public static synchronized DFPWinSignalArbiter getInstance() {
+        if (instance == null) {
+            instance = new DFPWinSignalArbiter();
+        }
+        return instance;
+    }
+
+    /**
+     * Schedules the given deadline on main thread. Any previously scheduled run of the same
+     * deadline is cancelled, so an event handler can reuse a single Runnable for all its requests.
+     *
+     * @param deadline    task to be executed if win signal is not received in time
+     * @param delayMillis time to wait in milli-sec
+     */
+    void schedule(Runnable deadline, long delayMillis) {
+        mainHandler.removeCallbacks(deadline);
+        mainHandler.postDelayed(deadline, delayMillis);
+    }
+
+    /**
+     * Cancels the scheduled deadline, if any.
+     *
+     * @param deadline task passed to {@link #schedule(Runnable, long)}
+     */
+    void cancel(Runnable deadline) {
+        mainHandler.removeCallbacks(deadline);
+    }
+
+    /**
+     * Enables the adaptive wait for win signal. When set, all the DFP event handlers record the
+     * delay of onAppEvent() per ad unit and wait as per the tracker's estimate instead of the
+     * fixed {@link #DEFAULT_WIN_SIGNAL_TIMEOUT}. Pass null to disable it.
+     *
+     * @param tracker latency tracker
+     */
+    public void setLatencyTracker(DFPAppEventLatencyTracker tracker) {
+        latencyTracker = tracker;
+    }
+
+    /**
+     * @return latency tracker if adaptive wait is enabled, else null
+     */
+    public DFPAppEventLatencyTracker getLatencyTracker() {
+        return latencyTracker;
+    }
+
+    /**
+     * Returns the time to wait for onAppEvent() after onAdLoaded() for the given ad unit.
+     *
+     * @param adUnitId DFP ad unit ID
+     * @return wait time in milli-sec
+     */
+    public long getWinSignalTimeout(String adUnitId) {
+        DFPAppEventLatencyTracker tracker = latencyTracker;
+        if (tracker != null && adUnitId != null) {
+            return tracker.getTimeout(adUnitId);
+        }
+        return DEFAULT_WIN_SIGNAL_TIMEOUT;
+    }
+
+    /**
+     * Records the delay between onAdLoaded() and onAppEvent(), if adaptive wait is enabled.
+     *
+     * @param adUnitId DFP ad unit ID
+     * @param latency  delay in milli-sec
+     */
+    void recordWinSignalLatency(String adUnitId, long latency) {
+        DFPAppEventLatencyTracker tracker = latencyTracker;
+        if (tracker != null && adUnitId != null) {
+            tracker.record(adUnitId, latency);
+        }
+    }
+
+    void recordAppEventWin() {
+        appEventWinCount.incrementAndGet();
+    }
+
+    void recordTimeout() {
+        timeoutCount.incrementAndGet();
+    }
+
+    /**
+     * @return number of times onAppEvent() is received while waiting for the win signal
+     */
+    public long getAppEventWinCount() {
+        return appEventWinCount.get();
+    }
+
+    /**
+     * @return number of times the wait for win signal is expired, i.e. DFP is considered as winner
+     */
+    public long getTimeoutCount() {
+        return timeoutCount.get();
+    }
+
+    /**
+     * Resets the win signal counters
+     */
+    public void resetCounters() {
+        appEventWinCount.set(0);
+        timeoutCount.set(0);
+    }
+}
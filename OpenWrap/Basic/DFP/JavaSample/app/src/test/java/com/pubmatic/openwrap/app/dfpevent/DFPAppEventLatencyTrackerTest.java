@@ -0,0 +1,74 @@
+package com.pubmatic.openwrap.app.dfpevent;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link DFPAppEventLatencyTracker}.
+ */
+public class DFPAppEventLatencyTrackerTest {
+
+    private static final String AD_UNIT_ID = "/15671365/pm_sdk/PMSDK-Demo-App-Banner";
+
+    @Test
+    public void getTimeout_usesUpperBoundUntilMinSamples() {
+        DFPAppEventLatencyTracker tracker = new DFPAppEventLatencyTracker(0.95d, 0, 400);
+        tracker.setMinSamples(10);
+        for (int index = 0; index < 9; index++) {
+            tracker.record(AD_UNIT_ID, 50);
+        }
+        assertEquals(-1, tracker.getEstimate(AD_UNIT_ID));
+        assertEquals(400, tracker.getTimeout(AD_UNIT_ID));
+
+        tracker.record(AD_UNIT_ID, 50);
+        assertEquals(60, tracker.getTimeout(AD_UNIT_ID));
+    }
+
+    @Test
+    public void getTimeout_boundedByMinAndMax() {
+        DFPAppEventLatencyTracker tracker = new DFPAppEventLatencyTracker(0.95d, 100, 400);
+        tracker.setMinSamples(1);
+        tracker.record(AD_UNIT_ID, 20);
+        assertEquals(100, tracker.getTimeout(AD_UNIT_ID));
+
+        tracker.reset();
+        tracker.record(AD_UNIT_ID, 5000);
+        assertEquals(400, tracker.getTimeout(AD_UNIT_ID));
+    }
+
+    @Test
+    public void getTimeout_growsAgainAfterSlowdown() {
+        DFPAppEventLatencyTracker tracker = new DFPAppEventLatencyTracker(0.95d, 0, 400);
+        tracker.setMinSamples(20);
+        // Fast line items, wait time shrinks to the observed delays
+        for (int index = 0; index < 200; index++) {
+            tracker.record(AD_UNIT_ID, 50);
+        }
+        long fastTimeout = tracker.getTimeout(AD_UNIT_ID);
+        assertEquals(60, fastTimeout);
+
+        // Win signals slow down beyond the current wait time, i.e. they arrive after the deadline.
+        // Event handlers record such late signals at their real delay as well.
+        int requestCount = 0;
+        while (tracker.getTimeout(AD_UNIT_ID) < 300 && requestCount < 100) {
+            tracker.record(AD_UNIT_ID, 300);
+            requestCount++;
+        }
+        assertEquals(310, tracker.getTimeout(AD_UNIT_ID));
+        // Rank of 95th percentile is covered once the slow signals exceed 5% of the samples
+        assertTrue("Wait time should adapt within a few requests, took " + requestCount,
+                requestCount <= 11);
+    }
+
+    @Test
+    public void record_keepsAdUnitsSeparate() {
+        DFPAppEventLatencyTracker tracker = new DFPAppEventLatencyTracker(0.95d, 0, 400);
+        tracker.setMinSamples(1);
+        tracker.record(AD_UNIT_ID, 50);
+        tracker.record("/15671365/pm_sdk/PMSDK-Demo-App-Interstitial", 250);
+
+        assertEquals(60, tracker.getTimeout(AD_UNIT_ID));
+        assertEquals(260, tracker.getTimeout("/15671365/pm_sdk/PMSDK-Demo-App-Interstitial"));
+    }
+}
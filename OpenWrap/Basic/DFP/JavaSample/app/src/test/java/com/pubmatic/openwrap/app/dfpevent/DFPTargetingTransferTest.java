@@ -0,0 +1,133 @@
+package com.pubmatic.openwrap.app.dfpevent;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for the targeting snapshot of {@link DFPTargetingTransfer}.
+ */
+public class DFPTargetingTransferTest {
+
+    /**
+     * Number of identical requests measured for allocations. It is kept low, so that the loop is
+     * not compiled by the optimizing JIT, whose escape analysis could remove a short lived iterator
+     * that ART would allocate on a device.
+     */
+    private static final int ALLOCATION_ITERATIONS = 1000;
+
+    private DFPTargetingTransfer targetingTransfer;
+
+    @Before
+    public void setUp() {
+        targetingTransfer = new DFPTargetingTransfer("DFPTargetingTransferTest");
+    }
+
+    @Test
+    public void snapshot_reusedForSameContents() {
+        assertEquals(4, targetingTransfer.snapshot(createTargeting("bid-1")));
+        assertEquals(4, targetingTransfer.snapshot(createTargeting("bid-1")));
+
+        assertEquals(1, targetingTransfer.getSnapshotBuildCount());
+    }
+
+    @Test
+    public void snapshot_reusedForSameContentsInAnotherOrder() {
+        Map<String, String> targeting = createTargeting("bid-1");
+        Map<String, String> reordered = new LinkedHashMap<>();
+        reordered.put("pwtpid", "pubmatic");
+        reordered.put("pwtecp", "1.20");
+        reordered.put("pwtbst", "1");
+        reordered.put("pwtsid", "bid-1");
+        targetingTransfer.snapshot(targeting);
+        targetingTransfer.snapshot(reordered);
+
+        assertEquals(1, targetingTransfer.getSnapshotBuildCount());
+    }
+
+    @Test
+    public void snapshot_doesNotAllocateForSameContents() {
+        java.lang.management.ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        if (!(threadBean instanceof com.sun.management.ThreadMXBean)) {
+            // Allocation counters are not available on this JVM
+            return;
+        }
+        com.sun.management.ThreadMXBean allocationBean = (com.sun.management.ThreadMXBean) threadBean;
+        long threadId = Thread.currentThread().getId();
+        Map<String, String> targeting = createTargeting("bid-1");
+        targeting.put("pwtdealid", null);
+        // First request builds the snapshot
+        targetingTransfer.snapshot(targeting);
+        allocationBean.getThreadAllocatedBytes(threadId);
+
+        long allocatedBefore = allocationBean.getThreadAllocatedBytes(threadId);
+        for (int index = 0; index < ALLOCATION_ITERATIONS; index++) {
+            targetingTransfer.snapshot(targeting);
+        }
+        long allocated = allocationBean.getThreadAllocatedBytes(threadId) - allocatedBefore;
+
+        assertEquals(1, targetingTransfer.getSnapshotBuildCount());
+        // An iterator per request would take at least 16 bytes, the counter itself may allocate
+        // a few bytes once
+        assertTrue("Allocated " + allocated + " bytes in " + ALLOCATION_ITERATIONS + " requests",
+                allocated < ALLOCATION_ITERATIONS);
+    }
+
+    @Test
+    public void snapshot_rebuiltForNewBid() {
+        targetingTransfer.snapshot(createTargeting("bid-1"));
+        targetingTransfer.snapshot(createTargeting("bid-2"));
+
+        assertEquals(2, targetingTransfer.getSnapshotBuildCount());
+    }
+
+    @Test
+    public void snapshot_rebuiltWhenTargetingChangesInPlace() {
+        Map<String, String> targeting = createTargeting("bid-1");
+        targetingTransfer.snapshot(targeting);
+
+        // Same map and size, different value
+        targeting.put("pwtecp", "2.50");
+        targetingTransfer.snapshot(targeting);
+        assertEquals(2, targetingTransfer.getSnapshotBuildCount());
+
+        // Same map and size, different key
+        targeting.remove("pwtpid");
+        targeting.put("pwtdeal", "deal-1");
+        assertEquals(4, targetingTransfer.snapshot(targeting));
+        assertEquals(3, targetingTransfer.getSnapshotBuildCount());
+    }
+
+    @Test
+    public void snapshot_handlesMissingTargeting() {
+        assertEquals(0, targetingTransfer.snapshot(null));
+        assertEquals(0, targetingTransfer.snapshot(new HashMap<String, String>()));
+        assertEquals(4, targetingTransfer.snapshot(createTargeting("bid-1")));
+        assertEquals(0, targetingTransfer.snapshot(null));
+    }
+
+    @Test
+    public void reset_rebuildsNextSnapshot() {
+        Map<String, String> targeting = createTargeting("bid-1");
+        targetingTransfer.snapshot(targeting);
+        targetingTransfer.reset();
+
+        assertEquals(4, targetingTransfer.snapshot(targeting));
+        assertEquals(2, targetingTransfer.getSnapshotBuildCount());
+    }
+
+    private static Map<String, String> createTargeting(String bidId) {
+        Map<String, String> targeting = new HashMap<>();
+        targeting.put("pwtsid", bidId);
+        targeting.put("pwtbst", "1");
+        targeting.put("pwtecp", "1.20");
+        targeting.put("pwtpid", "pubmatic");
+        return targeting;
+    }
+}
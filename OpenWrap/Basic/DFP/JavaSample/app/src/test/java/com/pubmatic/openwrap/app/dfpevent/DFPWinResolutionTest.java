@@ -0,0 +1,201 @@
+package com.pubmatic.openwrap.app.dfpevent;
+
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link DFPWinResolution}.
+ */
+public class DFPWinResolutionTest {
+
+    private static final int STRESS_REQUEST_COUNT = 2000;
+
+    @Test
+    public void start_movesToLoading() {
+        DFPWinResolution resolution = new DFPWinResolution();
+        assertEquals(DFPWinResolution.State.IDLE, resolution.getState());
+
+        int requestId = resolution.start();
+        assertEquals(requestId, resolution.getRequestId());
+        assertEquals(DFPWinResolution.State.LOADING, resolution.getState());
+        assertEquals(DFPWinResolution.Outcome.NONE, resolution.getOutcome(requestId));
+    }
+
+    @Test
+    public void isLoading_falseOnceResolvedOrSuperseded() {
+        DFPWinResolution resolution = new DFPWinResolution();
+        int requestId = resolution.start();
+        assertTrue(resolution.isLoading(requestId));
+
+        // Timed out request, its late onAdLoaded() is dropped
+        assertTrue(resolution.resolveFailure(requestId));
+        assertFalse(resolution.isLoading(requestId));
+
+        int nextRequestId = resolution.start();
+        assertFalse(resolution.isLoading(requestId));
+        assertTrue(resolution.isLoading(nextRequestId));
+
+        assertTrue(resolution.awaitSignal(nextRequestId));
+        assertFalse(resolution.isLoading(nextRequestId));
+    }
+
+    @Test
+    public void awaitSignal_movesToWaitingSignalOnce() {
+        DFPWinResolution resolution = new DFPWinResolution();
+        int requestId = resolution.start();
+
+        assertTrue(resolution.awaitSignal(requestId));
+        assertFalse(resolution.awaitSignal(requestId));
+        assertEquals(DFPWinResolution.State.WAITING_SIGNAL, resolution.getState());
+    }
+
+    @Test
+    public void resolve_resolvesOnlyOnce() {
+        DFPWinResolution resolution = new DFPWinResolution();
+        int requestId = resolution.start();
+        assertTrue(resolution.awaitSignal(requestId));
+
+        assertTrue(resolution.resolvePartnerWin(requestId));
+        assertFalse(resolution.resolveAdServerWin(requestId));
+        assertFalse(resolution.resolveFailure(requestId));
+        assertFalse(resolution.resolvePartnerWin(requestId));
+        assertEquals(DFPWinResolution.State.RESOLVED, resolution.getState());
+        assertEquals(DFPWinResolution.Outcome.PARTNER_WIN, resolution.getOutcome(requestId));
+    }
+
+    @Test
+    public void resolve_fromLoading() {
+        DFPWinResolution resolution = new DFPWinResolution();
+        int requestId = resolution.start();
+
+        assertTrue(resolution.resolveAdServerWin(requestId));
+        assertFalse(resolution.awaitSignal(requestId));
+        assertEquals(DFPWinResolution.Outcome.AD_SERVER_WIN, resolution.getOutcome(requestId));
+    }
+
+    @Test
+    public void resolve_ignoresPreviousRequest() {
+        DFPWinResolution resolution = new DFPWinResolution();
+        int previousRequestId = resolution.start();
+        int requestId = resolution.start();
+
+        assertFalse(resolution.awaitSignal(previousRequestId));
+        assertFalse(resolution.resolveAdServerWin(previousRequestId));
+        assertEquals(DFPWinResolution.State.LOADING, resolution.getState());
+        assertTrue(resolution.resolveFailure(requestId));
+        assertEquals(DFPWinResolution.Outcome.NONE, resolution.getOutcome(previousRequestId));
+    }
+
+    @Test
+    public void reset_abandonsRequest() {
+        DFPWinResolution resolution = new DFPWinResolution();
+        int requestId = resolution.start();
+        resolution.reset();
+
+        assertEquals(DFPWinResolution.State.IDLE, resolution.getState());
+        assertFalse(resolution.resolvePartnerWin(requestId));
+        assertFalse(resolution.resolveAdServerWin(requestId));
+    }
+
+    /**
+     * Races the win signal, the ad server load followed by the deadline, the failure and a late
+     * callback of the previous request with random delays, and checks that exactly one of them
+     * resolves every request.
+     */
+    @Test
+    public void resolve_stress_exactlyOneTerminalCallbackPerRequest() throws Exception {
+        final DFPWinResolution resolution = new DFPWinResolution();
+        final int threadCount = 4;
+        final CyclicBarrier startBarrier = new CyclicBarrier(threadCount + 1);
+        final CyclicBarrier endBarrier = new CyclicBarrier(threadCount + 1);
+        final AtomicInteger terminalCount = new AtomicInteger();
+        final AtomicInteger staleCount = new AtomicInteger();
+        final int[] requestIds = new int[2];
+        final Throwable[] failure = new Throwable[1];
+
+        Thread[] threads = new Thread[threadCount];
+        for (int index = 0; index < threadCount; index++) {
+            final int role = index;
+            threads[index] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Random random = new Random(role);
+                    try {
+                        for (int request = 0; request < STRESS_REQUEST_COUNT; request++) {
+                            startBarrier.await();
+                            int requestId = requestIds[0];
+                            spin(random.nextInt(200));
+                            switch (role) {
+                                case 0:
+                                    // onAppEvent()
+                                    if (resolution.resolvePartnerWin(requestId)) {
+                                        terminalCount.incrementAndGet();
+                                    }
+                                    break;
+                                case 1:
+                                    // onAdLoaded() followed by the win signal deadline
+                                    resolution.awaitSignal(requestId);
+                                    spin(random.nextInt(200));
+                                    if (resolution.resolveAdServerWin(requestId)) {
+                                        terminalCount.incrementAndGet();
+                                    }
+                                    break;
+                                case 2:
+                                    // onAdFailedToLoad()
+                                    if (resolution.resolveFailure(requestId)) {
+                                        terminalCount.incrementAndGet();
+                                    }
+                                    break;
+                                default:
+                                    // Late deadline of the previous request
+                                    if (resolution.resolveAdServerWin(requestIds[1])) {
+                                        staleCount.incrementAndGet();
+                                    }
+                                    break;
+                            }
+                            endBarrier.await();
+                        }
+                    } catch (Throwable t) {
+                        failure[0] = t;
+                    }
+                }
+            });
+            threads[index].setDaemon(true);
+            threads[index].start();
+        }
+
+        for (int request = 0; request < STRESS_REQUEST_COUNT; request++) {
+            requestIds[1] = resolution.getRequestId();
+            requestIds[0] = resolution.start();
+            terminalCount.set(0);
+            startBarrier.await();
+            endBarrier.await();
+
+            assertEquals("Request " + request, 1, terminalCount.get());
+            assertEquals(DFPWinResolution.State.RESOLVED, resolution.getState());
+            assertNotEquals(DFPWinResolution.Outcome.NONE, resolution.getOutcome(requestIds[0]));
+        }
+
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertNull(failure[0]);
+        assertEquals(0, staleCount.get());
+    }
+
+    // Busy waits for given number of iterations to randomize the order of the racing threads
+    private static void spin(int iterations) {
+        long value = 0;
+        for (int index = 0; index < iterations; index++) {
+            value += index;
+        }
+        if (value == -1) {
+            Thread.yield();
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package com.pubmatic.openwrap.app.dfpevent;
+
+import android.content.Context;
+
+import androidx.benchmark.BenchmarkState;
+import androidx.benchmark.junit4.BenchmarkRule;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.google.android.gms.ads.AdSize;
+import com.google.android.gms.ads.doubleclick.PublisherAdRequest;
+import com.pubmatic.sdk.openwrap.core.POBBid;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+/**
+ * Benchmarks of DFPBannerEventHandler.requestAd() and DFPInterstitialEventHandler.requestAd(), with
+ * loadAd() stubbed, since PublisherAdView.loadAd() and PublisherInterstitialAd.loadAd() perform a
+ * network request. Everything else done by requestAd() on the main thread is measured, i.e. circuit
+ * breaker check, targeting transfer, price floor check, win resolution and request deadline.
+ * <p>
+ * Along with the time, the number of allocations per request is reported, e.g. the reuse of the
+ * targeting snapshot for the same bid should show no allocations by the transfer.
+ * <p>
+ * Run with "./gradlew benchmark:connectedCheck" on a physical device.
+ */
+@RunWith(Parameterized.class)
+public class DFPRequestAdBenchmark {
+
+    private static final String AD_UNIT_ID = "/15671365/pm_sdk/PMSDK-Demo-App-Banner";
+    /**
+     * Number of distinct bids cycled in the benchmarks of new bid, i.e. the snapshot can't be reused
+     */
+    private static final int BID_COUNT = 16;
+
+    @Rule
+    public BenchmarkRule benchmarkRule = new BenchmarkRule();
+
+    @Parameterized.Parameter
+    public int targetingSize;
+
+    private POBBid[] bids;
+    private DFPBannerEventHandler bannerEventHandler;
+    private DFPInterstitialEventHandler interstitialEventHandler;
+
+    @Parameterized.Parameters(name = "targetingSize={0}")
+    public static Collection<Object[]> parameters() {
+        return Arrays.asList(new Object[][]{{4}, {16}, {64}});
+    }
+
+    @Before
+    public void setUp() {
+        bids = new POBBid[BID_COUNT];
+        for (int index = 0; index < BID_COUNT; index++) {
+            bids[index] = createBid(index, targetingSize);
+        }
+        final Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        // DFP views must be created on the main thread
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                bannerEventHandler = new DFPBannerEventHandler(context, AD_UNIT_ID, AdSize.BANNER) {
+                    @Override
+                    void loadAd(PublisherAdRequest adRequest) {
+                        // No network request
+                    }
+                };
+                interstitialEventHandler = new DFPInterstitialEventHandler(context, AD_UNIT_ID) {
+                    @Override
+                    void loadAd(PublisherAdRequest adRequest) {
+                        // No network request
+                    }
+                };
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                bannerEventHandler.destroy();
+                interstitialEventHandler.destroy();
+            }
+        });
+        DFPRequestWatchdog.getInstance().setTimeout(AD_UNIT_ID, DFPRequestWatchdog.NO_TIMEOUT);
+    }
+
+    /**
+     * Banner refresh with the same bid, targeting snapshot is reused
+     */
+    @Test
+    public void bannerRequestAd_sameBid() {
+        final POBBid bid = bids[0];
+        runOnMainThread(new Runnable() {
+            @Override
+            public void run() {
+                BenchmarkState state = benchmarkRule.getState();
+                while (state.keepRunning()) {
+                    bannerEventHandler.requestAd(bid);
+                }
+            }
+        });
+    }
+
+    /**
+     * Every banner request with a new bid, targeting snapshot is rebuilt
+     */
+    @Test
+    public void bannerRequestAd_newBid() {
+        runOnMainThread(new Runnable() {
+            @Override
+            public void run() {
+                int index = 0;
+                BenchmarkState state = benchmarkRule.getState();
+                while (state.keepRunning()) {
+                    bannerEventHandler.requestAd(bids[index]);
+                    index = (index + 1) % BID_COUNT;
+                }
+            }
+        });
+    }
+
+    /**
+     * Every banner request with a new bid, along with the price floor check and request deadline
+     */
+    @Test
+    public void bannerRequestAd_newBidWithPriceFloorAndDeadline() {
+        DFPPriceFloorTable priceFloorTable = new DFPPriceFloorTable();
+        priceFloorTable.setFloor(AD_UNIT_ID, 0.5d);
+        priceFloorTable.setGranularity(AD_UNIT_ID, DFPPriceFloorTable.increment(0.1d));
+        bannerEventHandler.setPriceFloorTable(priceFloorTable);
+        DFPRequestWatchdog.getInstance().setTimeout(AD_UNIT_ID, 5000);
+        runOnMainThread(new Runnable() {
+            @Override
+            public void run() {
+                int index = 0;
+                BenchmarkState state = benchmarkRule.getState();
+                while (state.keepRunning()) {
+                    bannerEventHandler.requestAd(bids[index]);
+                    index = (index + 1) % BID_COUNT;
+                }
+            }
+        });
+    }
+
+    /**
+     * Every interstitial request with a new bid, PublisherInterstitialAd is created per request
+     */
+    @Test
+    public void interstitialRequestAd_newBid() {
+        runOnMainThread(new Runnable() {
+            @Override
+            public void run() {
+                int index = 0;
+                BenchmarkState state = benchmarkRule.getState();
+                while (state.keepRunning()) {
+                    interstitialEventHandler.requestAd(bids[index]);
+                    index = (index + 1) % BID_COUNT;
+                }
+            }
+        });
+    }
+
+    // Event handlers are used on the main thread by OpenWrap SDK
+    private static void runOnMainThread(Runnable benchmark) {
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(benchmark);
+    }
+
+    /**
+     * Creates a synthetic bid with given number of targeting parameters. POBBid is mocked with
+     * stub only setting, so that mock does not record the invocations.
+     */
+    private static POBBid createBid(int id, int targetingSize) {
+        Map<String, String> targeting = new HashMap<>();
+        targeting.put("pwtsid", "bid-" + id);
+        targeting.put("pwtbst", "1");
+        targeting.put("pwtecp", String.valueOf(1.0d + id * 0.1d));
+        targeting.put("pwtpid", "pubmatic");
+        for (int index = targeting.size(); index < targetingSize; index++) {
+            targeting.put("pwtkey" + index, "value" + id + "_" + index);
+        }
+
+        POBBid bid = mock(POBBid.class, withSettings().stubOnly());
+        when(bid.getTargetingInfo()).thenReturn(targeting);
+        when(bid.getPrice()).thenReturn(1.0d + id * 0.1d);
+        return bid;
+    }
+}
@@ -17,11 +17,7 @@
 
 package com.pubmatic.openwrap.app.mopubevent;
 
-import android.Manifest;
 import android.content.Context;
-import android.content.pm.PackageManager;
-import android.net.ConnectivityManager;
-import android.net.NetworkInfo;
 
 import com.mopub.mobileads.MoPubErrorCode;
 import com.mopub.mobileads.MoPubView;
@@ -33,12 +29,11 @@ import com.pubmatic.sdk.openwrap.banner.POBBannerEvent;
 import com.pubmatic.sdk.openwrap.banner.POBBannerEventListener;
 import com.pubmatic.sdk.openwrap.core.POBBid;
 
+import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 
-import androidx.core.content.ContextCompat;
-
 /**
  * This class is compatible with OpenWrap SDK v1.5.0.
  * This class implements the communication between the OpenWrap SDK and the MoPub SDK for a given ad
@@ -66,11 +61,45 @@ public class MoPubBannerEventHandler implements POBBannerEvent, MoPubView.Banner
      * Interface to pass the MoPub ad event to OpenWrap SDK
      */
     private POBBannerEventListener eventListener;
+    /**
+     * Encodes bid targeting into MoPub keywords
+     */
+    private final MoPubKeywordEncoder keywordEncoder = new MoPubKeywordEncoder();
 
     /**
      * Android context
      */
     private Context context;
+    /**
+     * Shared network connectivity monitor
+     */
+    private final MoPubConnectivityMonitor connectivityMonitor;
+    /**
+     * MoPub ad unit ID
+     */
+    private final String adUnitId;
+    /**
+     * Flag to identify if MoPub SDK has not responded to the current ad request yet
+     */
+    private boolean isRequestPending;
+    /**
+     * Flag to identify if a timed out load may still be in progress in the MoPub view
+     */
+    private boolean isTimedOutLoadPending;
+    /**
+     * Replaced MoPub views which may still be on screen, destroyed once they are detached
+     */
+    private final List<MoPubView> retiredViews = new ArrayList<>();
+    /**
+     * Deadline task to fail the ad request if MoPub SDK does not respond in time. It is scheduled
+     * on the shared MoPubRequestWatchdog and reused for every ad request.
+     */
+    private final Runnable requestDeadline = new Runnable() {
+        @Override
+        public void run() {
+            onRequestTimeout();
+        }
+    };
 
     /**
      * Constructor
@@ -80,7 +109,13 @@ public class MoPubBannerEventHandler implements POBBannerEvent, MoPubView.Banner
      */
     public MoPubBannerEventHandler(Context context, String adUnitId, POBAdSize size) {
         this.context = context;
+        connectivityMonitor = MoPubConnectivityMonitor.getInstance(context);
         adSize = size;
+        this.adUnitId = adUnitId;
+        createMoPubView();
+    }
+
+    private void createMoPubView() {
         moPubView = new MoPubView(context);
         moPubView.setAdUnitId(adUnitId);
 
@@ -89,6 +124,58 @@ public class MoPubBannerEventHandler implements POBBannerEvent, MoPubView.Banner
         moPubView.setAutorefreshEnabled(false);
     }
 
+    private void onRequestTimeout() {
+        if (!isRequestPending) {
+            return;
+        }
+        isRequestPending = false;
+        MoPubRequestWatchdog watchdog = MoPubRequestWatchdog.getInstance();
+        watchdog.recordTimeout(adUnitId);
+        MoPubCircuitBreaker.getInstance().recordFailure(adUnitId);
+
+        // MoPubView does not allow to cancel the ad request, its late callbacks are dropped. The
+        // view is not destroyed here as it may still be showing the previous winning ad.
+        isTimedOutLoadPending = true;
+
+        if (null != eventListener) {
+            eventListener.onFailed(new POBError(POBError.TIMEOUT_ERROR, "MoPub SDK did not respond in "
+                    + watchdog.getTimeout(adUnitId) + " milli-sec"));
+        }
+    }
+
+    // View which is on screen keeps showing the previous winning ad, it is destroyed later
+    private void retireMoPubView() {
+        if (moPubView.getParent() == null) {
+            moPubView.destroy();
+        } else {
+            retiredViews.add(moPubView);
+        }
+    }
+
+    private void destroyDetachedRetiredViews() {
+        for (int index = retiredViews.size() - 1; index >= 0; index--) {
+            MoPubView view = retiredViews.get(index);
+            if (view.getParent() == null) {
+                view.destroy();
+                retiredViews.remove(index);
+            }
+        }
+    }
+
+    // Marks the current ad request as responded, returns false if it is already responded or
+    // timed out, i.e. the callback should be dropped
+    private boolean finishRequest() {
+        if (!isRequestPending) {
+            // Late callback ends the timed out load, hence the view can be reused as is
+            isTimedOutLoadPending = false;
+            PMLog.debug(TAG, "Dropping MoPub callback, ad request is already finished");
+            return false;
+        }
+        isRequestPending = false;
+        MoPubRequestWatchdog.getInstance().cancel(requestDeadline);
+        return true;
+    }
+
     /**
      * Sets the Data listener object. Publisher should implement the MoPubConfigListener and
      * override its method only when publisher needs to set the targeting parameters over MoPub
@@ -104,8 +191,8 @@ public class MoPubBannerEventHandler implements POBBannerEvent, MoPubView.Banner
     @Override
     public void requestAd(POBBid bid) {
         // If network is not available, SDK is not getting error callbacks from MoPub
-        // For that we are checking the network initially and throwing error callback.
-        if(!isConnected(context)){
+        // For that we are checking the cached network state initially and throwing error callback.
+        if(!connectivityMonitor.isConnected()){
             POBError error = new POBError(POBError.NETWORK_ERROR, "Network not available!");
             PMLog.error(TAG, error.toString());
             if(null != eventListener){
@@ -113,6 +200,23 @@ public class MoPubBannerEventHandler implements POBBannerEvent, MoPubView.Banner
             }
             return;
         }
+        // Fail immediately while MoPub keeps failing for this ad unit
+        MoPubCircuitBreaker circuitBreaker = MoPubCircuitBreaker.getInstance();
+        if (!circuitBreaker.allowRequest(adUnitId)) {
+            if (null != eventListener) {
+                eventListener.onFailed(new POBError(POBError.NETWORK_ERROR,
+                        "MoPub circuit is open, retrying in "
+                                + circuitBreaker.getRetryDelay(adUnitId) + " milli-sec"));
+            }
+            return;
+        }
+        // Replace the view of a timed out load, so that its late callbacks are dropped
+        destroyDetachedRetiredViews();
+        if (isTimedOutLoadPending) {
+            isTimedOutLoadPending = false;
+            retireMoPubView();
+            createMoPubView();
+        }
         moPubView.setKeywords(null);
         // Check if publisher want to set any targeting data
         if (mopubConfigListener != null) {
@@ -126,27 +230,11 @@ public class MoPubBannerEventHandler implements POBBannerEvent, MoPubView.Banner
         if (null != bid) {
             // Logging details of bid objects for debug purpose.
             PMLog.debug(TAG, bid.toString());
-            StringBuilder keywords = new StringBuilder();
-            Map<String, String> targeting = bid.getTargetingInfo();
-            if (targeting != null && !targeting.isEmpty()) {
-                // using for-each loop for iteration over Map.entrySet()
-                Iterator<Map.Entry<String, String>> targetingSet = targeting.entrySet().iterator();
-                while (targetingSet.hasNext()) {
-                    Map.Entry<String, String> entry = targetingSet.next();
-                    keywords.append(entry.getKey()).append(":").append(entry.getValue());
-                    if (targetingSet.hasNext()) {
-                        keywords.append(",");
-                    }
-                    PMLog.debug(TAG, "Targeting param [" + entry.getKey() + "] = " + entry.getValue());
-                }
-
-                // Check if keywords is configured by publisher, append it
-                String publisherKeywords = moPubView.getKeywords();
-                if (publisherKeywords != null && !"".equalsIgnoreCase(publisherKeywords)) {
-                    keywords.append(",");
-                    keywords.append(publisherKeywords);
-                }
-                moPubView.setKeywords(keywords.toString());
+            // Encode targeting along with the keywords configured by publisher
+            String keywords = keywordEncoder.encode(bid.getTargetingInfo(), moPubView.getKeywords());
+            if (keywords != null) {
+                PMLog.debug(TAG, "Targeting keywords: " + keywords);
+                moPubView.setKeywords(keywords);
 
                 // No need to set localExtras when status is 0, as Pubmatic line item will not get
                 // picked up
@@ -164,7 +252,19 @@ public class MoPubBannerEventHandler implements POBBannerEvent, MoPubView.Banner
             }
 
         }
+        // Fail the request if MoPub SDK does not respond in time
+        isRequestPending = true;
+        MoPubRequestWatchdog.getInstance().schedule(requestDeadline, adUnitId);
+
         // Load MoPub ad request
+        loadAd();
+    }
+
+    /**
+     * Hands over the ad request to MoPub SDK. Benchmarks override it to measure requestAd()
+     * without a network request.
+     */
+    void loadAd() {
         moPubView.loadAd();
     }
 
@@ -192,10 +292,17 @@ public class MoPubBannerEventHandler implements POBBannerEvent, MoPubView.Banner
 
     @Override
     public void destroy() {
+        isRequestPending = false;
+        isTimedOutLoadPending = false;
+        MoPubRequestWatchdog.getInstance().cancel(requestDeadline);
         if (null != moPubView) {
             moPubView.destroy();
             moPubView = null;
         }
+        for (MoPubView view : retiredViews) {
+            view.destroy();
+        }
+        retiredViews.clear();
         if (null != eventListener) {
             eventListener = null;
         }
@@ -205,6 +312,11 @@ public class MoPubBannerEventHandler implements POBBannerEvent, MoPubView.Banner
     @Override
     public void onBannerLoaded(MoPubView banner) {
         PMLog.info(TAG, "onBannerLoaded");
+        // Drop the callbacks of a replaced view and of a finished request
+        if (banner != moPubView || !finishRequest()) {
+            return;
+        }
+        MoPubCircuitBreaker.getInstance().recordSuccess(adUnitId);
         POBBid pubmaticBid = (POBBid) banner.getLocalExtras().get(POBBannerCustomEvent.BID_KEY);
         if (pubmaticBid != null) {
             if (pubmaticBid.hasWon()) {
@@ -213,7 +325,7 @@ public class MoPubBannerEventHandler implements POBBannerEvent, MoPubView.Banner
                 eventListener.onAdServerWin(banner);
             }
         }else {
-            onBannerFailed(banner, MoPubErrorCode.NETWORK_NO_FILL);
+            notifyFailure(MoPubErrorCode.NETWORK_NO_FILL);
         }
 
     }
@@ -221,6 +333,25 @@ public class MoPubBannerEventHandler implements POBBannerEvent, MoPubView.Banner
     @Override
     public void onBannerFailed(MoPubView banner, MoPubErrorCode errorCode) {
         PMLog.info(TAG, "onBannerFailed");
+        if (banner == moPubView && finishRequest()) {
+            recordCircuitResult(errorCode);
+            notifyFailure(errorCode);
+        }
+    }
+
+    // Only network timeout and server errors count towards opening the circuit, other errors are
+    // responses of MoPub
+    private void recordCircuitResult(MoPubErrorCode errorCode) {
+        MoPubCircuitBreaker circuitBreaker = MoPubCircuitBreaker.getInstance();
+        if (errorCode == MoPubErrorCode.NETWORK_TIMEOUT
+                || errorCode == MoPubErrorCode.SERVER_ERROR) {
+            circuitBreaker.recordFailure(adUnitId);
+        } else {
+            circuitBreaker.recordSuccess(adUnitId);
+        }
+    }
+
+    private void notifyFailure(MoPubErrorCode errorCode) {
         POBError error;
         if (eventListener != null) {
             switch (errorCode) {
@@ -274,22 +405,6 @@ public class MoPubBannerEventHandler implements POBBannerEvent, MoPubView.Banner
         }
     }
 
-    /**
-     * Method to check network connection available
-     * @param context android context
-     * @return true if network is available else returns false
-     */
-    private static boolean isConnected(Context context) {
-        ConnectivityManager cm = (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
-        if (cm != null && ContextCompat.checkSelfPermission(context, Manifest.permission.ACCESS_NETWORK_STATE)
-                == PackageManager.PERMISSION_GRANTED) {
-            NetworkInfo activeNetwork = cm.getActiveNetworkInfo();
-            return activeNetwork != null &&
-                    activeNetwork.isConnected();
-        }
-        return false;
-    }
-
     /**
      * Interface to get the MoPub Banner ad view object, to configure the properties.
      */
@@ -0,0 +1,359 @@
+/*
+ * PubMatic Inc. ("PubMatic") CONFIDENTIAL
+ * Unpublished Copyright (c) 2006-2020 PubMatic, All Rights Reserved.
+ *
+ * NOTICE:  All information contained herein is, and remains the property of PubMatic. The intellectual and technical concepts contained
+ * herein are proprietary to PubMatic and may be covered by U.S. and Foreign Patents, patents in process, and are protected by trade secret or copyright law.
+ * Dissemination of this information or reproduction of this material is strictly forbidden unless prior written permission is obtained
+ * from PubMatic.  Access to the source code contained herein is hereby forbidden to anyone except current PubMatic employees, managers or contractors who have executed
+ * Confidentiality and Non-disclosure agreements explicitly covering such access.
+ *
+ * The copyright notice above does not evidence any actual or intended publication or disclosure  of  this source code, which includes
+ * information that is confidential and/or proprietary, and is a trade secret, of  PubMatic.   ANY REPRODUCTION, MODIFICATION, DISTRIBUTION, PUBLIC  PERFORMANCE,
+ * OR PUBLIC DISPLAY OF OR THROUGH USE  OF THIS  SOURCE CODE  WITHOUT  THE EXPRESS WRITTEN CONSENT OF PubMatic IS STRICTLY PROHIBITED, AND IN VIOLATION OF APPLICABLE
+ * LAWS AND INTERNATIONAL TREATIES.  THE RECEIPT OR POSSESSION OF  THIS SOURCE CODE AND/OR RELATED INFORMATION DOES NOT CONVEY OR IMPLY ANY RIGHTS
+ * TO REPRODUCE, DISCLOSE OR DISTRIBUTE ITS CONTENTS, OR TO MANUFACTURE, USE, OR SELL ANYTHING THAT IT  MAY DESCRIBE, IN WHOLE OR IN PART.
+ */
+
+package com.pubmatic.openwrap.app.mopubevent;
+
+import android.os.SystemClock;
+
+import com.pubmatic.sdk.common.log.PMLog;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class is compatible with OpenWrap SDK v1.5.0.
+ * Shared circuit breaker used by all the MoPub event handlers to stop requesting an ad unit while
+ * MoPub keeps failing with network timeout or server errors, or does not respond in time. If the
+ * failure threshold is reached within the failure window, circuit of the ad unit opens and event
+ * handlers fail the ad requests immediately without calling MoPub SDK.
+ * <p>
+ * Once the backoff elapses, circuit moves to half-open and a single probe request is allowed. If
+ * MoPub responds to the probe, circuit closes, else it opens again with double the backoff, up to
+ * the maximum backoff. Circuits are kept per MoPub ad unit.
+ */
+public final class MoPubCircuitBreaker {
+
+    private static final String TAG = "MoPubCircuitBreaker";
+
+    /**
+     * Default number of failures which opens the circuit
+     */
+    public static final int DEFAULT_FAILURE_THRESHOLD = 3;
+    /**
+     * Default time (in milli-sec) within which the failures are counted
+     */
+    public static final long DEFAULT_FAILURE_WINDOW = 60 * 1000;
+    /**
+     * Default time (in milli-sec) for which the circuit stays open after it opens first time
+     */
+    public static final long DEFAULT_INITIAL_BACKOFF = 10 * 1000;
+    /**
+     * Default upper limit (in milli-sec) of the backoff
+     */
+    public static final long DEFAULT_MAX_BACKOFF = 5 * 60 * 1000;
+
+    /**
+     * States of the circuit of an ad unit
+     */
+    public enum State {
+        /**
+         * Ad requests are allowed
+         */
+        CLOSED,
+        /**
+         * Ad requests fail immediately until the backoff elapses
+         */
+        OPEN,
+        /**
+         * Backoff elapsed, a single probe request is allowed
+         */
+        HALF_OPEN
+    }
+
+    /**
+     * Source of the current time, in milli-sec
+     */
+    interface Clock {
+        long uptimeMillis();
+    }
+
+    private static MoPubCircuitBreaker instance;
+
+    private final Clock clock;
+    /**
+     * Circuit per MoPub ad unit
+     */
+    private final Map<String, Circuit> circuits = new ConcurrentHashMap<>();
+    /**
+     * Number of ad requests failed immediately as the circuit is open
+     */
+    private final AtomicLong rejectedCount = new AtomicLong();
+    /**
+     * Number of times any circuit opened
+     */
+    private final AtomicLong openCount = new AtomicLong();
+    private volatile int failureThreshold = DEFAULT_FAILURE_THRESHOLD;
+    private volatile long failureWindow = DEFAULT_FAILURE_WINDOW;
+    private volatile long initialBackoff = DEFAULT_INITIAL_BACKOFF;
+    private volatile long maxBackoff = DEFAULT_MAX_BACKOFF;
+
+    MoPubCircuitBreaker(Clock clock) {
+        this.clock = clock;
+    }
+
+    /**
+     * Returns the shared circuit breaker instance
+     *
+     * @return MoPubCircuitBreaker instance
+     */
+    public static synchronized MoPubCircuitBreaker getInstance() {
+        if (instance == null) {
+            instance = new MoPubCircuitBreaker(new Clock() {
+                @Override
+                public long uptimeMillis() {
+                    return SystemClock.uptimeMillis();
+                }
+            });
+        }
+        return instance;
+    }
+
+    /**
+     * Configures the circuit breaker. All the circuits are closed, as their failures were counted
+     * with the previous configuration.
+     *
+     * @param failureThreshold number of failures which opens the circuit
+     * @param failureWindow    time (in milli-sec) within which the failures are counted
+     * @param initialBackoff   time (in milli-sec) for which the circuit stays open first time
+     * @param maxBackoff       upper limit (in milli-sec) of the backoff
+     */
+    public void configure(int failureThreshold, long failureWindow, long initialBackoff,
+                          long maxBackoff) {
+        if (failureThreshold <= 0 || failureWindow <= 0 || initialBackoff <= 0
+                || maxBackoff < initialBackoff) {
+            throw new IllegalArgumentException("Invalid circuit breaker configuration");
+        }
+        this.failureThreshold = failureThreshold;
+        this.failureWindow = failureWindow;
+        this.initialBackoff = initialBackoff;
+        this.maxBackoff = maxBackoff;
+        circuits.clear();
+    }
+
+    /**
+     * Checks if an ad request can be made for the given ad unit. If the backoff of an open circuit
+     * has elapsed, the caller is allowed to make the probe request.
+     *
+     * @param adUnitId MoPub ad unit ID
+     * @return true if the ad request should be made, false if it should fail immediately
+     */
+    boolean allowRequest(String adUnitId) {
+        Circuit circuit = adUnitId != null ? circuits.get(adUnitId) : null;
+        if (circuit == null || circuit.allowRequest(clock.uptimeMillis())) {
+            return true;
+        }
+        rejectedCount.incrementAndGet();
+        return false;
+    }
+
+    /**
+     * Records that MoPub responded to an ad request of the given ad unit, with an ad or with an error
+     * other than network timeout and server error. It closes the circuit,
+     * unless the circuit is open and its probe request is not allowed yet.
+     *
+     * @param adUnitId MoPub ad unit ID
+     */
+    void recordSuccess(String adUnitId) {
+        Circuit circuit = adUnitId != null ? circuits.get(adUnitId) : null;
+        if (circuit != null && circuit.recordSuccess()) {
+            PMLog.info(TAG, "Circuit closed for ad unit: " + adUnitId);
+        }
+    }
+
+    /**
+     * Records that an ad request of the given ad unit failed with network timeout or server
+     * error, or timed out.
+     *
+     * @param adUnitId MoPub ad unit ID
+     */
+    void recordFailure(String adUnitId) {
+        if (adUnitId == null) {
+            return;
+        }
+        Circuit circuit = circuits.get(adUnitId);
+        if (circuit == null) {
+            Circuit newCircuit = new Circuit(failureThreshold);
+            circuit = circuits.putIfAbsent(adUnitId, newCircuit);
+            if (circuit == null) {
+                circuit = newCircuit;
+            }
+        }
+        long backoff = circuit.recordFailure(clock.uptimeMillis(), failureWindow, initialBackoff,
+                maxBackoff);
+        if (backoff > 0) {
+            openCount.incrementAndGet();
+            PMLog.warn(TAG, "Circuit opened for ad unit: " + adUnitId + ", retrying in " + backoff
+                    + " milli-sec");
+        }
+    }
+
+    /**
+     * Returns the state of the circuit of the given ad unit.
+     *
+     * @param adUnitId MoPub ad unit ID
+     * @return circuit state
+     */
+    public State getState(String adUnitId) {
+        Circuit circuit = adUnitId != null ? circuits.get(adUnitId) : null;
+        return circuit != null ? circuit.getState(clock.uptimeMillis()) : State.CLOSED;
+    }
+
+    /**
+     * Returns the time after which the next ad request of the given ad unit is allowed.
+     *
+     * @param adUnitId MoPub ad unit ID
+     * @return remaining backoff in milli-sec, 0 if the ad request is allowed now
+     */
+    public long getRetryDelay(String adUnitId) {
+        Circuit circuit = adUnitId != null ? circuits.get(adUnitId) : null;
+        return circuit != null ? circuit.getRetryDelay(clock.uptimeMillis()) : 0;
+    }
+
+    /**
+     * @return number of ad requests failed immediately as the circuit was open
+     */
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    /**
+     * @return number of times any circuit opened
+     */
+    public long getOpenCount() {
+        return openCount.get();
+    }
+
+    /**
+     * Closes all the circuits and resets the counters
+     */
+    public void reset() {
+        circuits.clear();
+        rejectedCount.set(0);
+        openCount.set(0);
+    }
+
+    /**
+     * Circuit of a single ad unit. Failure times are kept in a ring of threshold size, so the
+     * threshold is reached within the window when the oldest of them is within the window.
+     */
+    private static final class Circuit {
+
+        private final long[] failureTimes;
+        private int failureCount;
+        private int nextFailure;
+        private State state = State.CLOSED;
+        /**
+         * Time at which the open circuit moves to half-open
+         */
+        private long openUntil;
+        /**
+         * Time at which the half-open circuit allowed the probe request
+         */
+        private long probeTime;
+        /**
+         * Backoff of the latest opening, 0 if the circuit is closed
+         */
+        private long backoff;
+
+        Circuit(int failureThreshold) {
+            failureTimes = new long[failureThreshold];
+        }
+
+        synchronized boolean allowRequest(long now) {
+            switch (state) {
+                case OPEN:
+                    if (now < openUntil) {
+                        return false;
+                    }
+                    state = State.HALF_OPEN;
+                    probeTime = now;
+                    return true;
+                case HALF_OPEN:
+                    // Allow another probe if the previous one is abandoned, e.g. its event handler
+                    // is destroyed before MoPub responded
+                    if (now - probeTime < backoff) {
+                        return false;
+                    }
+                    probeTime = now;
+                    return true;
+                default:
+                    return true;
+            }
+        }
+
+        // Returns true if the circuit was not closed
+        synchronized boolean recordSuccess() {
+            if (state == State.OPEN) {
+                // Late success of a request made before the circuit opened, only the probe of the
+                // half-open circuit can close it
+                return false;
+            }
+            boolean wasOpen = state != State.CLOSED;
+            state = State.CLOSED;
+            failureCount = 0;
+            backoff = 0;
+            return wasOpen;
+        }
+
+        // Returns the backoff if the circuit opened, else 0
+        synchronized long recordFailure(long now, long window, long initialBackoff,
+                                        long maxBackoff) {
+            switch (state) {
+                case HALF_OPEN:
+                    // Probe failed, back off exponentially
+                    return open(now, Math.min(backoff * 2, maxBackoff));
+                case OPEN:
+                    // Late failure of a request made before the circuit opened
+                    return 0;
+                default:
+                    failureTimes[nextFailure] = now;
+                    nextFailure = (nextFailure + 1) % failureTimes.length;
+                    failureCount = Math.min(failureCount + 1, failureTimes.length);
+                    // Oldest failure is the next one to be overwritten
+                    if (failureCount == failureTimes.length
+                            && now - failureTimes[nextFailure] <= window) {
+                        return open(now, initialBackoff);
+                    }
+                    return 0;
+            }
+        }
+
+        synchronized State getState(long now) {
+            return state == State.OPEN && now >= openUntil ? State.HALF_OPEN : state;
+        }
+
+        synchronized long getRetryDelay(long now) {
+            switch (state) {
+                case OPEN:
+                    return Math.max(0, openUntil - now);
+                case HALF_OPEN:
+                    return Math.max(0, probeTime + backoff - now);
+                default:
+                    return 0;
+            }
+        }
+
+        private long open(long now, long backoff) {
+            state = State.OPEN;
+            this.backoff = backoff;
+            openUntil = now + backoff;
+            failureCount = 0;
+            return backoff;
+        }
+    }
+}
@@ -0,0 +1,183 @@
+/*
+ * PubMatic Inc. ("PubMatic") CONFIDENTIAL
+ * Unpublished Copyright (c) 2006-2020 PubMatic, All Rights Reserved.
+ *
+ * NOTICE:  All information contained herein is, and remains the property of PubMatic. The intellectual and technical concepts contained
+ * herein are proprietary to PubMatic and may be covered by U.S. and Foreign Patents, patents in process, and are protected by trade secret or copyright law.
+ * Dissemination of this information or reproduction of this material is strictly forbidden unless prior written permission is obtained
+ * from PubMatic.  Access to the source code contained herein is hereby forbidden to anyone except current PubMatic employees, managers or contractors who have executed
+ * Confidentiality and Non-disclosure agreements explicitly covering such access.
+ *
+ * The copyright notice above does not evidence any actual or intended publication or disclosure  of  this source code, which includes
+ * information that is confidential and/or proprietary, and is a trade secret, of  PubMatic.   ANY REPRODUCTION, MODIFICATION, DISTRIBUTION, PUBLIC  PERFORMANCE,
+ * OR PUBLIC DISPLAY OF OR THROUGH USE  OF THIS  SOURCE CODE  WITHOUT  THE EXPRESS WRITTEN CONSENT OF PubMatic IS STRICTLY PROHIBITED, AND IN VIOLATION OF APPLICABLE
+ * LAWS AND INTERNATIONAL TREATIES.  THE RECEIPT OR POSSESSION OF  THIS SOURCE CODE AND/OR RELATED INFORMATION DOES NOT CONVEY OR IMPLY ANY RIGHTS
+ * TO REPRODUCE, DISCLOSE OR DISTRIBUTE ITS CONTENTS, OR TO MANUFACTURE, USE, OR SELL ANYTHING THAT IT  MAY DESCRIBE, IN WHOLE OR IN PART.
+ */
+
+package com.pubmatic.openwrap.app.mopubevent;
+
+import android.Manifest;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.pm.PackageManager;
+import android.net.ConnectivityManager;
+import android.net.Network;
+import android.net.NetworkInfo;
+import android.os.Build;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import androidx.core.content.ContextCompat;
+
+/**
+ * This class is compatible with OpenWrap SDK v1.5.0.
+ * Shared network connectivity monitor for MoPub event handlers. It subscribes to the connectivity
+ * changes once and keeps the latest state, so event handlers can check the network availability
+ * before every ad request without querying ConnectivityManager.
+ */
+public final class MoPubConnectivityMonitor {
+
+    /**
+     * Source of connectivity state and its changes
+     */
+    interface ConnectivitySource {
+        /**
+         * @return current connectivity state
+         */
+        boolean isConnected();
+
+        /**
+         * Starts listening the connectivity changes
+         *
+         * @param callback callback to be notified on connectivity change
+         */
+        void start(Callback callback);
+
+        /**
+         * Stops listening the connectivity changes
+         */
+        void stop();
+
+        /**
+         * Callback to notify the connectivity change
+         */
+        interface Callback {
+            void onConnectivityChanged(boolean connected);
+        }
+    }
+
+    private static MoPubConnectivityMonitor instance;
+
+    private final ConnectivitySource source;
+    private final AtomicBoolean connected = new AtomicBoolean();
+
+    MoPubConnectivityMonitor(ConnectivitySource source) {
+        this.source = source;
+        source.start(new ConnectivitySource.Callback() {
+            @Override
+            public void onConnectivityChanged(boolean isConnected) {
+                connected.set(isConnected);
+            }
+        });
+        connected.set(source.isConnected());
+    }
+
+    /**
+     * Returns the shared monitor instance, it starts monitoring on first call.
+     *
+     * @param context android context
+     * @return MoPubConnectivityMonitor instance
+     */
+    public static synchronized MoPubConnectivityMonitor getInstance(Context context) {
+        if (instance == null) {
+            instance = new MoPubConnectivityMonitor(new AndroidConnectivitySource(context.getApplicationContext()));
+        }
+        return instance;
+    }
+
+    /**
+     * @return true if network is available else returns false
+     */
+    public boolean isConnected() {
+        return connected.get();
+    }
+
+    /**
+     * Stops monitoring the connectivity
+     */
+    void stop() {
+        source.stop();
+    }
+
+    /**
+     * Connectivity source backed by ConnectivityManager. It uses default network callback on API 24
+     * and above, and connectivity broadcast below it.
+     */
+    private static final class AndroidConnectivitySource implements ConnectivitySource {
+
+        private final Context context;
+        private final ConnectivityManager connectivityManager;
+        private final boolean hasPermission;
+        private Object listener;
+
+        AndroidConnectivitySource(Context context) {
+            this.context = context;
+            connectivityManager = (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+            hasPermission = ContextCompat.checkSelfPermission(context, Manifest.permission.ACCESS_NETWORK_STATE)
+                    == PackageManager.PERMISSION_GRANTED;
+        }
+
+        @Override
+        public boolean isConnected() {
+            if (connectivityManager != null && hasPermission) {
+                NetworkInfo activeNetwork = connectivityManager.getActiveNetworkInfo();
+                return activeNetwork != null && activeNetwork.isConnected();
+            }
+            return false;
+        }
+
+        @Override
+        public void start(final Callback callback) {
+            if (connectivityManager == null || !hasPermission) {
+                return;
+            }
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+                ConnectivityManager.NetworkCallback networkCallback = new ConnectivityManager.NetworkCallback() {
+                    @Override
+                    public void onAvailable(Network network) {
+                        callback.onConnectivityChanged(true);
+                    }
+
+                    @Override
+                    public void onLost(Network network) {
+                        callback.onConnectivityChanged(false);
+                    }
+                };
+                connectivityManager.registerDefaultNetworkCallback(networkCallback);
+                listener = networkCallback;
+            } else {
+                BroadcastReceiver receiver = new BroadcastReceiver() {
+                    @Override
+                    public void onReceive(Context context, Intent intent) {
+                        callback.onConnectivityChanged(isConnected());
+                    }
+                };
+                context.registerReceiver(receiver, new IntentFilter(ConnectivityManager.CONNECTIVITY_ACTION));
+                listener = receiver;
+            }
+        }
+
+        @Override
+        public void stop() {
+            if (listener instanceof BroadcastReceiver) {
+                context.unregisterReceiver((BroadcastReceiver) listener);
+            } else if (listener != null && Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+                connectivityManager.unregisterNetworkCallback((ConnectivityManager.NetworkCallback) listener);
+            }
+            listener = null;
+        }
+    }
+}
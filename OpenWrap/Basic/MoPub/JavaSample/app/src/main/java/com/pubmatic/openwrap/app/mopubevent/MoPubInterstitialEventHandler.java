@@ -17,12 +17,7 @@
 
 package com.pubmatic.openwrap.app.mopubevent;
 
-import android.Manifest;
 import android.app.Activity;
-import android.content.Context;
-import android.content.pm.PackageManager;
-import android.net.ConnectivityManager;
-import android.net.NetworkInfo;
 
 import com.mopub.mobileads.MoPubErrorCode;
 import com.mopub.mobileads.MoPubInterstitial;
@@ -34,11 +29,8 @@ import com.pubmatic.sdk.openwrap.interstitial.POBInterstitialEvent;
 import com.pubmatic.sdk.openwrap.interstitial.POBInterstitialEventListener;
 
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.Map;
 
-import androidx.core.content.ContextCompat;
-
 /**
  * This class is compatible with OpenWrap SDK v1.5.0.
  * This class implements the communication between the OpenWrap SDK and the MoPub SDK for a given ad
@@ -58,6 +50,10 @@ public class MoPubInterstitialEventHandler implements POBInterstitialEvent, MoPu
      * Interface to pass the MoPub ad event to OpenWrap SDK
      */
     private POBInterstitialEventListener eventListener;
+    /**
+     * Encodes bid targeting into MoPub keywords
+     */
+    private final MoPubKeywordEncoder keywordEncoder = new MoPubKeywordEncoder();
     /**
      * MoPub Interstitial Ad instance
      */
@@ -70,10 +66,37 @@ public class MoPubInterstitialEventHandler implements POBInterstitialEvent, MoPu
      * Activity context on which interstitial Ad will get displayed.
      */
     private Activity context;
+    /**
+     * Flag to identify if MoPubInterstitial objects are reused across ad requests
+     */
+    private boolean recycleEnabled;
+    /**
+     * Flag to identify if current MoPubInterstitial is dismissed or failed, i.e. can be reused
+     */
+    private boolean isMoPubAdIdle;
+    /**
+     * Shared network connectivity monitor
+     */
+    private final MoPubConnectivityMonitor connectivityMonitor;
+    /**
+     * Flag to identify if MoPub SDK has not responded to the current ad request yet
+     */
+    private boolean isRequestPending;
+    /**
+     * Deadline task to fail the ad request if MoPub SDK does not respond in time. It is scheduled
+     * on the shared MoPubRequestWatchdog and reused for every ad request.
+     */
+    private final Runnable requestDeadline = new Runnable() {
+        @Override
+        public void run() {
+            onRequestTimeout();
+        }
+    };
 
     public MoPubInterstitialEventHandler(Activity context, String adUnitId) {
         this.context = context;
         this.mopubAdUnitId = adUnitId;
+        connectivityMonitor = MoPubConnectivityMonitor.getInstance(context);
 
     }
 
@@ -88,9 +111,26 @@ public class MoPubInterstitialEventHandler implements POBInterstitialEvent, MoPu
         mopubConfigListener = listener;
     }
 
+    /**
+     * Enables reuse of MoPubInterstitial objects across ad requests. When enabled, an idle
+     * (dismissed or failed) MoPubInterstitial is returned to the shared {@link MoPubInterstitialPool}
+     * instead of being destroyed, and next request takes it from the pool. Disabled by default, in
+     * which case a new MoPubInterstitial is created for every request.
+     *
+     * @param enabled true to reuse MoPubInterstitial objects
+     */
+    public void setRecycleEnabled(boolean enabled) {
+        recycleEnabled = enabled;
+    }
+
     private void initializeMoPubAd() {
         destroyMoPubAd();
-        moPubInterstitial = new MoPubInterstitial(context, mopubAdUnitId);
+        if (recycleEnabled) {
+            moPubInterstitial = MoPubInterstitialPool.getInstance().acquire(context, mopubAdUnitId);
+        } else {
+            moPubInterstitial = new MoPubInterstitial(context, mopubAdUnitId);
+        }
+        isMoPubAdIdle = false;
 
         // DO NOT REMOVE/OVERRIDE BELOW LISTENER
         moPubInterstitial.setInterstitialAdListener(this);
@@ -98,18 +138,53 @@ public class MoPubInterstitialEventHandler implements POBInterstitialEvent, MoPu
 
     private void destroyMoPubAd() {
         if (moPubInterstitial != null) {
-            moPubInterstitial.destroy();
+            // Only idle MoPub ad can be reused, a loaded ad would be served again on next load
+            if (recycleEnabled && isMoPubAdIdle) {
+                MoPubInterstitialPool.getInstance().release(context, mopubAdUnitId, moPubInterstitial);
+            } else {
+                moPubInterstitial.destroy();
+            }
             moPubInterstitial = null;
         }
     }
 
+    private void onRequestTimeout() {
+        if (!isRequestPending) {
+            return;
+        }
+        isRequestPending = false;
+        MoPubRequestWatchdog watchdog = MoPubRequestWatchdog.getInstance();
+        watchdog.recordTimeout(mopubAdUnitId);
+        MoPubCircuitBreaker.getInstance().recordFailure(mopubAdUnitId);
+
+        // Loading MoPub ad is not idle, hence it is destroyed, which cancels the pending load
+        destroyMoPubAd();
+
+        if (null != eventListener) {
+            eventListener.onFailed(new POBError(POBError.TIMEOUT_ERROR, "MoPub SDK did not respond in "
+                    + watchdog.getTimeout(mopubAdUnitId) + " milli-sec"));
+        }
+    }
+
+    // Marks the current ad request as responded, returns false if it is already responded or
+    // timed out, i.e. the callback should be dropped
+    private boolean finishRequest() {
+        if (!isRequestPending) {
+            PMLog.debug(TAG, "Dropping MoPub callback, ad request is already finished");
+            return false;
+        }
+        isRequestPending = false;
+        MoPubRequestWatchdog.getInstance().cancel(requestDeadline);
+        return true;
+    }
+
     //<editor-fold desc="POBInterstitialEvent overridden methods">
     @Override
     public void requestAd(POBBid bid) {
 
         // If network is not available, SDK is not getting error callbacks from MoPub
-        // For that we are checking the network initially and throwing error callback.
-        if(!isConnected(context)){
+        // For that we are checking the cached network state initially and throwing error callback.
+        if(!connectivityMonitor.isConnected()){
             POBError error = new POBError(POBError.NETWORK_ERROR, "Network not available!");
             PMLog.error(TAG, error.toString());
             if(null != eventListener){
@@ -117,9 +192,19 @@ public class MoPubInterstitialEventHandler implements POBInterstitialEvent, MoPu
             }
             return;
         }
+        // Fail immediately while MoPub keeps failing for this ad unit
+        MoPubCircuitBreaker circuitBreaker = MoPubCircuitBreaker.getInstance();
+        if (!circuitBreaker.allowRequest(mopubAdUnitId)) {
+            if (null != eventListener) {
+                eventListener.onFailed(new POBError(POBError.NETWORK_ERROR,
+                        "MoPub circuit is open, retrying in "
+                                + circuitBreaker.getRetryDelay(mopubAdUnitId) + " milli-sec"));
+            }
+            return;
+        }
 
         initializeMoPubAd();
-        StringBuilder targetingParams = null;
+        String keywords = null;
 
         // Check if publisher want to set any targeting data
         if (mopubConfigListener != null) {
@@ -137,7 +222,7 @@ public class MoPubInterstitialEventHandler implements POBInterstitialEvent, MoPu
         if (null != bid) {
             // Logging details of bid objects for debug purpose.
             PMLog.debug(TAG, bid.toString());
-            targetingParams = generateTargeting(bid);
+            keywords = generateTargeting(bid);
 
             // No need to set localExtras when status is 0, as PubMatic line item will not get
             // picked up
@@ -154,36 +239,32 @@ public class MoPubInterstitialEventHandler implements POBInterstitialEvent, MoPu
             }
         }
         //Add custom targeting parameters to MoPub Ad request
-        if (targetingParams != null) {
-
-            // Check if keywords is configured by publisher, append it
-            String publisherKeywords = moPubInterstitial.getKeywords();
-            if (publisherKeywords != null && !"".equalsIgnoreCase(publisherKeywords)) {
-                targetingParams.append(",");
-                targetingParams.append(publisherKeywords);
-            }
-            moPubInterstitial.setKeywords(targetingParams.toString());
+        if (keywords != null) {
+            moPubInterstitial.setKeywords(keywords);
         }
+        // Fail the request if MoPub SDK does not respond in time
+        isRequestPending = true;
+        MoPubRequestWatchdog.getInstance().schedule(requestDeadline, mopubAdUnitId);
+
         // Load MoPub ad request
+        loadAd();
+    }
+
+    /**
+     * Hands over the ad request to MoPub SDK. Benchmarks override it to measure requestAd()
+     * without a network request.
+     */
+    void loadAd() {
         moPubInterstitial.load();
     }
 
-    private StringBuilder generateTargeting(POBBid bid){
-        StringBuilder targetingParams = new StringBuilder();
-        Map<String, String> targeting = bid.getTargetingInfo();
-        if (targeting != null && !targeting.isEmpty()) {
-            // using iterator for iteration over Map.entrySet()
-            Iterator<Map.Entry<String, String>> iterator = targeting.entrySet().iterator();
-            while (iterator.hasNext()) {
-                Map.Entry<String, String> entry = iterator.next();
-                targetingParams.append(entry.getKey()).append(":").append(entry.getValue());
-                if (iterator.hasNext()) {
-                    targetingParams.append(",");
-                }
-                PMLog.debug(TAG, "Targeting param [" + entry.getKey() + "] = " + entry.getValue());
-            }
+    private String generateTargeting(POBBid bid){
+        // Encode targeting along with the keywords configured by publisher
+        String keywords = keywordEncoder.encode(bid.getTargetingInfo(), moPubInterstitial.getKeywords());
+        if (keywords != null) {
+            PMLog.debug(TAG, "Targeting keywords: " + keywords);
         }
-        return targetingParams;
+        return keywords;
     }
 
     @Override
@@ -211,13 +292,24 @@ public class MoPubInterstitialEventHandler implements POBInterstitialEvent, MoPu
 
     @Override
     public void destroy() {
+        isRequestPending = false;
+        MoPubRequestWatchdog.getInstance().cancel(requestDeadline);
         destroyMoPubAd();
+        // Pooled objects hold the activity strongly, release them once the activity is going away
+        if (context.isFinishing() || context.isChangingConfigurations()) {
+            MoPubInterstitialPool.getInstance().clear(context);
+        }
     }
 
     //<editor-fold desc="InterstitialAdListener overridden methods">
     @Override
     public void onInterstitialLoaded(MoPubInterstitial interstitial) {
         PMLog.info(TAG, "onInterstitialLoaded");
+        // Drop the callbacks of a destroyed MoPub ad and of a finished request
+        if (interstitial != moPubInterstitial || !finishRequest()) {
+            return;
+        }
+        MoPubCircuitBreaker.getInstance().recordSuccess(mopubAdUnitId);
         POBBid pubmaticBid = (POBBid) interstitial.getLocalExtras().get(POBInterstitialCustomEvent.BID_KEY);
         if (pubmaticBid != null && eventListener != null) {
             if (pubmaticBid.hasWon()) {
@@ -226,7 +318,9 @@ public class MoPubInterstitialEventHandler implements POBInterstitialEvent, MoPu
                 eventListener.onAdServerWin();
             }
         }else {
-            onInterstitialFailed(interstitial, MoPubErrorCode.NETWORK_NO_FILL);
+            // Loaded ad is not idle, hence it is destroyed instead of being pooled, else its
+            // creative would be served again on next load
+            notifyFailure(MoPubErrorCode.NETWORK_NO_FILL);
         }
     }
     //</editor-fold>
@@ -234,6 +328,29 @@ public class MoPubInterstitialEventHandler implements POBInterstitialEvent, MoPu
     @Override
     public void onInterstitialFailed(MoPubInterstitial interstitial, MoPubErrorCode errorCode) {
         PMLog.info(TAG, "onInterstitialFailed");
+        if (interstitial != moPubInterstitial) {
+            return;
+        }
+        isMoPubAdIdle = true;
+        if (finishRequest()) {
+            recordCircuitResult(errorCode);
+            notifyFailure(errorCode);
+        }
+    }
+
+    // Only network timeout and server errors count towards opening the circuit, other errors are
+    // responses of MoPub
+    private void recordCircuitResult(MoPubErrorCode errorCode) {
+        MoPubCircuitBreaker circuitBreaker = MoPubCircuitBreaker.getInstance();
+        if (errorCode == MoPubErrorCode.NETWORK_TIMEOUT
+                || errorCode == MoPubErrorCode.SERVER_ERROR) {
+            circuitBreaker.recordFailure(mopubAdUnitId);
+        } else {
+            circuitBreaker.recordSuccess(mopubAdUnitId);
+        }
+    }
+
+    private void notifyFailure(MoPubErrorCode errorCode) {
         if (null != eventListener) {
             switch (errorCode) {
                 case NO_FILL:
@@ -275,27 +392,13 @@ public class MoPubInterstitialEventHandler implements POBInterstitialEvent, MoPu
 
     @Override
     public void onInterstitialDismissed(MoPubInterstitial interstitial) {
+        isMoPubAdIdle = true;
         if (null != eventListener) {
             eventListener.onAdClosed();
         }
         destroy();
     }
 
-    /**
-     * Method to check network connection available
-     * @param context android context
-     * @return true if network is available else returns false
-     */
-    private static boolean isConnected(Context context) {
-        ConnectivityManager cm = (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
-        if (cm != null && ContextCompat.checkSelfPermission(context, Manifest.permission.ACCESS_NETWORK_STATE)
-                == PackageManager.PERMISSION_GRANTED) {
-            NetworkInfo activeNetwork = cm.getActiveNetworkInfo();
-            return activeNetwork != null &&
-                    activeNetwork.isConnected();
-        }
-        return false;
-    }
     /**
      * Interface to get the MoPub Interstitial ad object, to configure the properties.
      */
@@ -0,0 +1,196 @@
+/*
+ * PubMatic Inc. ("PubMatic") CONFIDENTIAL
+ * Unpublished Copyright (c) 2006-2020 PubMatic, All Rights Reserved.
+ *
+ * NOTICE:  All information contained herein is, and remains the property of PubMatic. The intellectual and technical concepts contained
+ * herein are proprietary to PubMatic and may be covered by U.S. and Foreign Patents, patents in process, and are protected by trade secret or copyright law.
+ * Dissemination of this information or reproduction of this material is strictly forbidden unless prior written permission is obtained
+ * from PubMatic.  Access to the source code contained herein is hereby forbidden to anyone except current PubMatic employees, managers or contractors who have executed
+ * Confidentiality and Non-disclosure agreements explicitly covering such access.
+ *
+ * The copyright notice above does not evidence any actual or intended publication or disclosure  of  this source code, which includes
+ * information that is confidential and/or proprietary, and is a trade secret, of  PubMatic.   ANY REPRODUCTION, MODIFICATION, DISTRIBUTION, PUBLIC  PERFORMANCE,
+ * OR PUBLIC DISPLAY OF OR THROUGH USE  OF THIS  SOURCE CODE  WITHOUT  THE EXPRESS WRITTEN CONSENT OF PubMatic IS STRICTLY PROHIBITED, AND IN VIOLATION OF APPLICABLE
+ * LAWS AND INTERNATIONAL TREATIES.  THE RECEIPT OR POSSESSION OF  THIS SOURCE CODE AND/OR RELATED INFORMATION DOES NOT CONVEY OR IMPLY ANY RIGHTS
+ * TO REPRODUCE, DISCLOSE OR DISTRIBUTE ITS CONTENTS, OR TO MANUFACTURE, USE, OR SELL ANYTHING THAT IT  MAY DESCRIBE, IN WHOLE OR IN PART.
+ */
+
+package com.pubmatic.openwrap.app.mopubevent;
+
+import android.app.Activity;
+
+import com.mopub.mobileads.MoPubInterstitial;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class is compatible with OpenWrap SDK v1.5.0.
+ * Bounded pool of idle MoPubInterstitial objects per ad unit. MoPubInterstitialEventHandler uses it
+ * (when recycling is enabled) to reuse the MoPub interstitial across ad requests instead of
+ * destroying and creating it for every request.
+ * <p>
+ * A MoPubInterstitial is bound to the activity it is created with, hence it is reused only for the
+ * same activity. Only idle objects, i.e. which are dismissed or failed to load, should be released
+ * to the pool. Objects of finishing activities are destroyed, and MoPubInterstitialEventHandler
+ * calls {@link #clear(Activity)} when it is destroyed while its activity is going away, as pooled
+ * objects hold the activity strongly.
+ */
+public final class MoPubInterstitialPool {
+
+    /**
+     * Default number of idle objects kept per ad unit
+     */
+    public static final int DEFAULT_MAX_SIZE_PER_AD_UNIT = 2;
+
+    private static MoPubInterstitialPool instance;
+
+    private final Map<String, List<PooledInterstitial>> pool = new HashMap<>();
+    private int maxSizePerAdUnit = DEFAULT_MAX_SIZE_PER_AD_UNIT;
+    private long hitCount;
+    private long missCount;
+
+    private MoPubInterstitialPool() {
+    }
+
+    /**
+     * Returns the shared pool instance
+     *
+     * @return MoPubInterstitialPool instance
+     */
+    public static synchronized MoPubInterstitialPool getInstance() {
+        if (instance == null) {
+            instance = new MoPubInterstitialPool();
+        }
+        return instance;
+    }
+
+    /**
+     * Sets the maximum number of idle objects kept per ad unit. Extra objects are destroyed.
+     *
+     * @param maxSize maximum number of idle objects per ad unit
+     */
+    public synchronized void setMaxSizePerAdUnit(int maxSize) {
+        maxSizePerAdUnit = Math.max(0, maxSize);
+        for (List<PooledInterstitial> entries : pool.values()) {
+            while (entries.size() > maxSizePerAdUnit) {
+                entries.remove(entries.size() - 1).interstitial.destroy();
+            }
+        }
+    }
+
+    /**
+     * Returns an idle MoPubInterstitial for the given activity and ad unit from the pool, or
+     * creates a new one if not available.
+     *
+     * @param activity activity on which interstitial ad will get displayed
+     * @param adUnitId MoPub ad unit ID
+     * @return MoPubInterstitial instance
+     */
+    synchronized MoPubInterstitial acquire(Activity activity, String adUnitId) {
+        List<PooledInterstitial> entries = pool.get(adUnitId);
+        if (entries != null) {
+            Iterator<PooledInterstitial> iterator = entries.iterator();
+            while (iterator.hasNext()) {
+                PooledInterstitial entry = iterator.next();
+                Activity owner = entry.activity.get();
+                if (!isAlive(owner)) {
+                    // Activity is gone, the object can not be reused
+                    iterator.remove();
+                    entry.interstitial.destroy();
+                } else if (owner == activity) {
+                    iterator.remove();
+                    hitCount++;
+                    return entry.interstitial;
+                }
+            }
+        }
+        missCount++;
+        return new MoPubInterstitial(activity, adUnitId);
+    }
+
+    /**
+     * Returns the idle MoPubInterstitial to the pool. It is destroyed if the pool of the ad unit
+     * is full or activity is finishing.
+     *
+     * @param activity     activity with which interstitial is created
+     * @param adUnitId     MoPub ad unit ID
+     * @param interstitial idle MoPubInterstitial
+     */
+    synchronized void release(Activity activity, String adUnitId, MoPubInterstitial interstitial) {
+        List<PooledInterstitial> entries = pool.get(adUnitId);
+        if (entries == null) {
+            entries = new ArrayList<>(maxSizePerAdUnit);
+            pool.put(adUnitId, entries);
+        }
+        if (!isAlive(activity) || entries.size() >= maxSizePerAdUnit) {
+            interstitial.destroy();
+            return;
+        }
+        // Clear the properties of previous request
+        interstitial.setInterstitialAdListener(null);
+        interstitial.setKeywords(null);
+        interstitial.setLocalExtras(new HashMap<String, Object>());
+        entries.add(new PooledInterstitial(activity, interstitial));
+    }
+
+    /**
+     * Destroys all the pooled objects created with given activity. Call it when activity is
+     * getting destroyed.
+     *
+     * @param activity activity
+     */
+    public synchronized void clear(Activity activity) {
+        for (List<PooledInterstitial> entries : pool.values()) {
+            Iterator<PooledInterstitial> iterator = entries.iterator();
+            while (iterator.hasNext()) {
+                PooledInterstitial entry = iterator.next();
+                Activity owner = entry.activity.get();
+                if (owner == null || owner == activity) {
+                    iterator.remove();
+                    entry.interstitial.destroy();
+                }
+            }
+        }
+    }
+
+    /**
+     * @return number of requests served from the pool
+     */
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * @return number of requests for which a new MoPubInterstitial is created
+     */
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * Checks if the activity can still display an interstitial, i.e. it is not finishing or
+     * getting recreated due to configuration change.
+     */
+    private static boolean isAlive(Activity activity) {
+        return activity != null && !activity.isFinishing() && !activity.isDestroyed()
+                && !activity.isChangingConfigurations();
+    }
+
+    /**
+     * Idle MoPubInterstitial along with the activity it is created with
+     */
+    private static final class PooledInterstitial {
+        private final WeakReference<Activity> activity;
+        private final MoPubInterstitial interstitial;
+
+        PooledInterstitial(Activity activity, MoPubInterstitial interstitial) {
+            this.activity = new WeakReference<>(activity);
+            this.interstitial = interstitial;
+        }
+    }
+}
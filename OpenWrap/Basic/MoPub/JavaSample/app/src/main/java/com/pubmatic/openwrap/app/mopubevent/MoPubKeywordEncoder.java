@@ -0,0 +1,167 @@
+/*
+ * PubMatic Inc. ("PubMatic") CONFIDENTIAL
+ * Unpublished Copyright (c) 2006-2020 PubMatic, All Rights Reserved.
+ *
+ * NOTICE:  All information contained herein is, and remains the property of PubMatic. The intellectual and technical concepts contained
+ * herein are proprietary to PubMatic and may be covered by U.S. and Foreign Patents, patents in process, and are protected by trade secret or copyright law.
+ * Dissemination of this information or reproduction of this material is strictly forbidden unless prior written permission is obtained
+ * from PubMatic.  Access to the source code contained herein is hereby forbidden to anyone except current PubMatic employees, managers or contractors who have executed
+ * Confidentiality and Non-disclosure agreements explicitly covering such access.
+ *
+ * The copyright notice above does not evidence any actual or intended publication or disclosure  of  this source code, which includes
+ * information that is confidential and/or proprietary, and is a trade secret, of  PubMatic.   ANY REPRODUCTION, MODIFICATION, DISTRIBUTION, PUBLIC  PERFORMANCE,
+ * OR PUBLIC DISPLAY OF OR THROUGH USE  OF THIS  SOURCE CODE  WITHOUT  THE EXPRESS WRITTEN CONSENT OF PubMatic IS STRICTLY PROHIBITED, AND IN VIOLATION OF APPLICABLE
+ * LAWS AND INTERNATIONAL TREATIES.  THE RECEIPT OR POSSESSION OF  THIS SOURCE CODE AND/OR RELATED INFORMATION DOES NOT CONVEY OR IMPLY ANY RIGHTS
+ * TO REPRODUCE, DISCLOSE OR DISTRIBUTE ITS CONTENTS, OR TO MANUFACTURE, USE, OR SELL ANYTHING THAT IT  MAY DESCRIBE, IN WHOLE OR IN PART.
+ */
+
+package com.pubmatic.openwrap.app.mopubevent;
+
+import java.util.Map;
+
+/**
+ * This class is compatible with OpenWrap SDK v1.5.0.
+ * Encodes the targeting information of OpenWrap bid into MoPub keywords, i.e.
+ * "key1:value1,key2:value2" followed by the keywords configured by publisher. Characters used by
+ * the keyword format (',' and ':') and '%' are percent encoded in keys and values.
+ * <p>
+ * Each event handler should use its own instance. The internal buffer is reused for every request
+ * and the last result is returned as is, if the contents of the targeting and publisher keywords
+ * are not changed. Targeting is compared by contents, as the same map may be modified in place.
+ */
+public final class MoPubKeywordEncoder {
+
+    private static final int DEFAULT_CAPACITY = 256;
+
+    private final StringBuilder buffer = new StringBuilder(DEFAULT_CAPACITY);
+
+    /**
+     * Input and output of the last encoding, targeting entries are kept in iteration order
+     */
+    private String[] lastKeys = new String[0];
+    private String[] lastValues = new String[0];
+    private int lastTargetingSize;
+    private String lastPublisherKeywords;
+    private String lastKeywords;
+
+    /**
+     * Encodes the given targeting and publisher keywords into MoPub keywords.
+     *
+     * @param targeting         bid targeting information
+     * @param publisherKeywords keywords configured by publisher on MoPub ad, may be null
+     * @return MoPub keywords, null if targeting is not available
+     */
+    public String encode(Map<String, String> targeting, String publisherKeywords) {
+        if (targeting == null || targeting.isEmpty()) {
+            return null;
+        }
+        if (lastKeywords != null && equals(publisherKeywords, lastPublisherKeywords)
+                && isLastTargeting(targeting)) {
+            return lastKeywords;
+        }
+
+        buffer.setLength(0);
+        boolean first = true;
+        for (Map.Entry<String, String> entry : targeting.entrySet()) {
+            if (!first) {
+                buffer.append(',');
+            }
+            first = false;
+            appendEscaped(entry.getKey());
+            buffer.append(':');
+            appendEscaped(entry.getValue());
+        }
+
+        // Check if keywords is configured by publisher, append it
+        if (publisherKeywords != null && !publisherKeywords.isEmpty()) {
+            buffer.append(',').append(publisherKeywords);
+        }
+
+        saveLastTargeting(targeting);
+        lastPublisherKeywords = publisherKeywords;
+        lastKeywords = buffer.toString();
+        return lastKeywords;
+    }
+
+    /**
+     * Clears the last result and trims the buffer, if it grows larger than the default capacity.
+     */
+    public void reset() {
+        for (int index = 0; index < lastTargetingSize; index++) {
+            lastKeys[index] = null;
+            lastValues[index] = null;
+        }
+        lastTargetingSize = 0;
+        lastPublisherKeywords = null;
+        lastKeywords = null;
+        buffer.setLength(0);
+        if (buffer.capacity() > DEFAULT_CAPACITY) {
+            buffer.trimToSize();
+        }
+    }
+
+    // Entries are compared in iteration order, a map with the same contents iterated in another
+    // order is just encoded again
+    private boolean isLastTargeting(Map<String, String> targeting) {
+        if (targeting.size() != lastTargetingSize) {
+            return false;
+        }
+        int index = 0;
+        for (Map.Entry<String, String> entry : targeting.entrySet()) {
+            if (!equals(lastKeys[index], entry.getKey())
+                    || !equals(lastValues[index], entry.getValue())) {
+                return false;
+            }
+            index++;
+        }
+        return true;
+    }
+
+    private void saveLastTargeting(Map<String, String> targeting) {
+        int count = targeting.size();
+        if (lastKeys.length < count) {
+            lastKeys = new String[count];
+            lastValues = new String[count];
+        }
+        for (int index = count; index < lastTargetingSize; index++) {
+            lastKeys[index] = null;
+            lastValues[index] = null;
+        }
+        int index = 0;
+        for (Map.Entry<String, String> entry : targeting.entrySet()) {
+            lastKeys[index] = entry.getKey();
+            lastValues[index] = entry.getValue();
+            index++;
+        }
+        lastTargetingSize = count;
+    }
+
+    private void appendEscaped(String text) {
+        if (text == null) {
+            buffer.append("null");
+            return;
+        }
+        int length = text.length();
+        for (int index = 0; index < length; index++) {
+            char ch = text.charAt(index);
+            switch (ch) {
+                case '%':
+                    buffer.append("%25");
+                    break;
+                case ',':
+                    buffer.append("%2C");
+                    break;
+                case ':':
+                    buffer.append("%3A");
+                    break;
+                default:
+                    buffer.append(ch);
+                    break;
+            }
+        }
+    }
+
+    private static boolean equals(String first, String second) {
+        return first == null ? second == null : first.equals(second);
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ * PubMatic Inc. ("PubMatic") CONFIDENTIAL
+ * Unpublished Copyright (c) 2006-2020 PubMatic, All Rights Reserved.
+ *
+ * NOTICE:  All information contained herein is, and remains the property of PubMatic. The intellectual and technical concepts contained
+ * herein are proprietary to PubMatic and may be covered by U.S. and Foreign Patents, patents in process, and are protected by trade secret or copyright law.
+ * Dissemination of this information or reproduction of this material is strictly forbidden unless prior written permission is obtained
+ * from PubMatic.  Access to the source code contained herein is hereby forbidden to anyone except current PubMatic employees, managers or contractors who have executed
+ * Confidentiality and Non-disclosure agreements explicitly covering such access.
+ *
+ * The copyright notice above does not evidence any actual or intended publication or disclosure  of  this source code, which includes
+ * information that is confidential and/or proprietary, and is a trade secret, of  PubMatic.   ANY REPRODUCTION, MODIFICATION, DISTRIBUTION, PUBLIC  PERFORMANCE,
+ * OR PUBLIC DISPLAY OF OR THROUGH USE  OF THIS  SOURCE CODE  WITHOUT  THE EXPRESS WRITTEN CONSENT OF PubMatic IS STRICTLY PROHIBITED, AND IN VIOLATION OF APPLICABLE
+ * LAWS AND INTERNATIONAL TREATIES.  THE RECEIPT OR POSSESSION OF  THIS SOURCE CODE AND/OR RELATED INFORMATION DOES NOT CONVEY OR IMPLY ANY RIGHTS
+ * TO REPRODUCE, DISCLOSE OR DISTRIBUTE ITS CONTENTS, OR TO MANUFACTURE, USE, OR SELL ANYTHING THAT IT  MAY DESCRIBE, IN WHOLE OR IN PART.
+ */
+
+package com.pubmatic.openwrap.app.mopubevent;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import com.pubmatic.sdk.common.log.PMLog;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class is compatible with OpenWrap SDK v1.5.0.
+ * Shared watchdog used by all the MoPub event handlers to bound the time taken by MoPub SDK to
+ * respond to an ad request. Event handler schedules a deadline when it makes the ad request and
+ * cancels it when MoPub SDK responds. If the deadline expires first, event handler fails the request
+ * with a timeout error and drops the late MoPub callbacks of that request.
+ * <p>
+ * Deadline can be configured per MoPub ad unit, all the deadlines are posted on a single main
+ * looper handler.
+ * <p>
+ * Deadlines are opt-in, no deadline is scheduled unless a timeout is set with
+ * {@link #setDefaultTimeout(long)} or {@link #setTimeout(String, long)}.
+ */
+public final class MoPubRequestWatchdog {
+
+    private static final String TAG = "MoPubRequestWatchdog";
+
+    /**
+     * Timeout value which disables the deadline, i.e. ad request waits as long as the SDK takes
+     */
+    public static final long NO_TIMEOUT = 0;
+
+    private static MoPubRequestWatchdog instance;
+
+    /**
+     * Main looper handler, shared by all the deadlines
+     */
+    private final Handler mainHandler;
+    /**
+     * Request timeout per MoPub ad unit
+     */
+    private final Map<String, Long> timeouts = new ConcurrentHashMap<>();
+    /**
+     * Number of ad requests failed due to timeout
+     */
+    private final AtomicLong timeoutCount = new AtomicLong();
+    private volatile long defaultTimeout = NO_TIMEOUT;
+
+    private MoPubRequestWatchdog() {
+        mainHandler = new Handler(Looper.getMainLooper());
+    }
+
+    /**
+     * Returns the shared watchdog instance
+     *
+     * @return MoPubRequestWatchdog instance
+     */
+    public static synchronized MoPubRequestWatchdog getInstance() {
+        if (instance == null) {
+            instance = new MoPubRequestWatchdog();
+        }
+        return instance;
+    }
+
+    /**
+     * Sets the request timeout of the ad units which do not have their own timeout. Pass
+     * {@link #NO_TIMEOUT} to disable their deadlines again.
+     *
+     * @param timeoutMillis timeout in milli-sec
+     */
+    public void setDefaultTimeout(long timeoutMillis) {
+        if (timeoutMillis < 0) {
+            throw new IllegalArgumentException("Timeout should not be negative");
+        }
+        defaultTimeout = timeoutMillis;
+    }
+
+    /**
+     * Sets the request timeout of the given ad unit. Pass zero or a negative value to use the
+     * default timeout.
+     *
+     * @param adUnitId      MoPub ad unit ID
+     * @param timeoutMillis timeout in milli-sec
+     */
+    public void setTimeout(String adUnitId, long timeoutMillis) {
+        if (timeoutMillis > 0) {
+            timeouts.put(adUnitId, timeoutMillis);
+        } else {
+            timeouts.remove(adUnitId);
+        }
+    }
+
+    /**
+     * Returns the request timeout of the given ad unit.
+     *
+     * @param adUnitId MoPub ad unit ID
+     * @return timeout in milli-sec, {@link #NO_TIMEOUT} if the deadline is disabled
+     */
+    public long getTimeout(String adUnitId) {
+        Long timeout = adUnitId != null ? timeouts.get(adUnitId) : null;
+        return timeout != null ? timeout : defaultTimeout;
+    }
+
+    /**
+     * Schedules the deadline of an ad request on main thread. Any previously scheduled run of the
+     * same deadline is cancelled. Nothing is scheduled if the ad unit has no timeout.
+     *
+     * @param deadline task to be executed if MoPub SDK does not respond in time
+     * @param adUnitId MoPub ad unit ID
+     */
+    void schedule(Runnable deadline, String adUnitId) {
+        mainHandler.removeCallbacks(deadline);
+        long timeout = getTimeout(adUnitId);
+        if (timeout > NO_TIMEOUT) {
+            mainHandler.postDelayed(deadline, timeout);
+        }
+    }
+
+    /**
+     * Cancels the scheduled deadline, if any.
+     *
+     * @param deadline task passed to {@link #schedule(Runnable, String)}
+     */
+    void cancel(Runnable deadline) {
+        mainHandler.removeCallbacks(deadline);
+    }
+
+    void recordTimeout(String adUnitId) {
+        timeoutCount.incrementAndGet();
+        PMLog.warn(TAG, "MoPub ad request timed out for ad unit: " + adUnitId);
+    }
+
+    /**
+     * @return number of ad requests failed due to timeout
+     */
+    public long getTimeoutCount() {
+        return timeoutCount.get();
+    }
+
+    /**
+     * Resets the timeout counter
+     */
+    public void resetCounters() {
+        timeoutCount.set(0);
+    }
+}
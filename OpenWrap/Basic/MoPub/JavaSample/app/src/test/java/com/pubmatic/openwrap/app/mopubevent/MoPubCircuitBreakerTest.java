@@ -0,0 +1,187 @@
+package com.pubmatic.openwrap.app.mopubevent;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link MoPubCircuitBreaker}.
+ */
+public class MoPubCircuitBreakerTest {
+
+    private static final String AD_UNIT = "adUnit";
+    private static final String OTHER_AD_UNIT = "otherAdUnit";
+
+    /**
+     * Clock which is controlled by the test
+     */
+    private static class FakeClock implements MoPubCircuitBreaker.Clock {
+        private long now = 1000;
+
+        void advance(long millis) {
+            now += millis;
+        }
+
+        @Override
+        public long uptimeMillis() {
+            return now;
+        }
+    }
+
+    private FakeClock clock;
+    private MoPubCircuitBreaker circuitBreaker;
+
+    @Before
+    public void setUp() {
+        clock = new FakeClock();
+        circuitBreaker = new MoPubCircuitBreaker(clock);
+        circuitBreaker.configure(3, 1000, 100, 350);
+    }
+
+    @Test
+    public void allowRequest_closedByDefault() {
+        assertTrue(circuitBreaker.allowRequest(AD_UNIT));
+        assertEquals(MoPubCircuitBreaker.State.CLOSED, circuitBreaker.getState(AD_UNIT));
+        assertEquals(0, circuitBreaker.getRetryDelay(AD_UNIT));
+    }
+
+    @Test
+    public void recordFailure_opensAtThresholdWithinWindow() {
+        failRequests(AD_UNIT, 2);
+        assertEquals(MoPubCircuitBreaker.State.CLOSED, circuitBreaker.getState(AD_UNIT));
+
+        failRequests(AD_UNIT, 1);
+        assertEquals(MoPubCircuitBreaker.State.OPEN, circuitBreaker.getState(AD_UNIT));
+        assertFalse(circuitBreaker.allowRequest(AD_UNIT));
+        assertEquals(100, circuitBreaker.getRetryDelay(AD_UNIT));
+        assertEquals(1, circuitBreaker.getOpenCount());
+        assertEquals(1, circuitBreaker.getRejectedCount());
+    }
+
+    @Test
+    public void recordFailure_ignoresFailuresOutsideWindow() {
+        failRequests(AD_UNIT, 2);
+        clock.advance(1001);
+
+        failRequests(AD_UNIT, 1);
+        assertEquals(MoPubCircuitBreaker.State.CLOSED, circuitBreaker.getState(AD_UNIT));
+
+        // Window slides, the last three failures are within it
+        clock.advance(500);
+        failRequests(AD_UNIT, 2);
+        assertEquals(MoPubCircuitBreaker.State.OPEN, circuitBreaker.getState(AD_UNIT));
+    }
+
+    @Test
+    public void recordFailure_keepsAdUnitsApart() {
+        failRequests(AD_UNIT, 3);
+
+        assertTrue(circuitBreaker.allowRequest(OTHER_AD_UNIT));
+        assertEquals(MoPubCircuitBreaker.State.CLOSED, circuitBreaker.getState(OTHER_AD_UNIT));
+    }
+
+    @Test
+    public void allowRequest_allowsSingleProbeAfterBackoff() {
+        failRequests(AD_UNIT, 3);
+        clock.advance(100);
+
+        assertEquals(MoPubCircuitBreaker.State.HALF_OPEN, circuitBreaker.getState(AD_UNIT));
+        assertTrue(circuitBreaker.allowRequest(AD_UNIT));
+        assertFalse(circuitBreaker.allowRequest(AD_UNIT));
+    }
+
+    @Test
+    public void recordSuccess_closesHalfOpenCircuit() {
+        failRequests(AD_UNIT, 3);
+        clock.advance(100);
+        assertTrue(circuitBreaker.allowRequest(AD_UNIT));
+
+        circuitBreaker.recordSuccess(AD_UNIT);
+        assertEquals(MoPubCircuitBreaker.State.CLOSED, circuitBreaker.getState(AD_UNIT));
+        assertTrue(circuitBreaker.allowRequest(AD_UNIT));
+
+        // Failures before closing are not counted again
+        failRequests(AD_UNIT, 2);
+        assertEquals(MoPubCircuitBreaker.State.CLOSED, circuitBreaker.getState(AD_UNIT));
+    }
+
+    @Test
+    public void recordFailure_backsOffExponentiallyUpToMax() {
+        failRequests(AD_UNIT, 3);
+        long[] expectedBackoffs = {200, 350, 350};
+        long backoff = 100;
+        for (long expectedBackoff : expectedBackoffs) {
+            clock.advance(backoff);
+            assertTrue(circuitBreaker.allowRequest(AD_UNIT));
+            circuitBreaker.recordFailure(AD_UNIT);
+
+            assertEquals(MoPubCircuitBreaker.State.OPEN, circuitBreaker.getState(AD_UNIT));
+            assertEquals(expectedBackoff, circuitBreaker.getRetryDelay(AD_UNIT));
+            backoff = expectedBackoff;
+        }
+        assertEquals(4, circuitBreaker.getOpenCount());
+    }
+
+    @Test
+    public void recordFailure_ignoresLateFailureWhileOpen() {
+        failRequests(AD_UNIT, 3);
+        circuitBreaker.recordFailure(AD_UNIT);
+
+        assertEquals(100, circuitBreaker.getRetryDelay(AD_UNIT));
+        assertEquals(1, circuitBreaker.getOpenCount());
+    }
+
+    @Test
+    public void recordSuccess_ignoresLateSuccessWhileOpen() {
+        failRequests(AD_UNIT, 3);
+        circuitBreaker.recordSuccess(AD_UNIT);
+        assertEquals(MoPubCircuitBreaker.State.OPEN, circuitBreaker.getState(AD_UNIT));
+        assertFalse(circuitBreaker.allowRequest(AD_UNIT));
+
+        // Backoff elapsed, but the probe is not made yet
+        clock.advance(100);
+        circuitBreaker.recordSuccess(AD_UNIT);
+        assertTrue(circuitBreaker.allowRequest(AD_UNIT));
+        assertFalse(circuitBreaker.allowRequest(AD_UNIT));
+
+        circuitBreaker.recordSuccess(AD_UNIT);
+        assertEquals(MoPubCircuitBreaker.State.CLOSED, circuitBreaker.getState(AD_UNIT));
+    }
+
+    @Test
+    public void allowRequest_allowsNewProbeIfPreviousIsAbandoned() {
+        failRequests(AD_UNIT, 3);
+        clock.advance(100);
+        assertTrue(circuitBreaker.allowRequest(AD_UNIT));
+
+        clock.advance(99);
+        assertFalse(circuitBreaker.allowRequest(AD_UNIT));
+        clock.advance(1);
+        assertTrue(circuitBreaker.allowRequest(AD_UNIT));
+    }
+
+    @Test
+    public void reset_closesAllCircuits() {
+        failRequests(AD_UNIT, 3);
+        assertFalse(circuitBreaker.allowRequest(AD_UNIT));
+
+        circuitBreaker.reset();
+        assertTrue(circuitBreaker.allowRequest(AD_UNIT));
+        assertEquals(0, circuitBreaker.getRejectedCount());
+        assertEquals(0, circuitBreaker.getOpenCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void configure_rejectsMaxBackoffBelowInitial() {
+        circuitBreaker.configure(3, 1000, 100, 50);
+    }
+
+    // Makes the given number of ad requests which fail
+    private void failRequests(String adUnitId, int count) {
+        for (int index = 0; index < count; index++) {
+            assertTrue(circuitBreaker.allowRequest(adUnitId));
+            circuitBreaker.recordFailure(adUnitId);
+        }
+    }
+}
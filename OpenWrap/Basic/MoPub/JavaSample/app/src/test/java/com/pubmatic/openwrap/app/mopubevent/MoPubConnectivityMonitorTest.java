@@ -0,0 +1,87 @@
+package com.pubmatic.openwrap.app.mopubevent;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link MoPubConnectivityMonitor}.
+ */
+public class MoPubConnectivityMonitorTest {
+
+    /**
+     * Connectivity source which is controlled by the test
+     */
+    private static class FakeConnectivitySource implements MoPubConnectivityMonitor.ConnectivitySource {
+        private boolean connected;
+        private Callback callback;
+        private int queryCount;
+
+        FakeConnectivitySource(boolean connected) {
+            this.connected = connected;
+        }
+
+        void setConnected(boolean connected) {
+            this.connected = connected;
+            if (callback != null) {
+                callback.onConnectivityChanged(connected);
+            }
+        }
+
+        @Override
+        public boolean isConnected() {
+            queryCount++;
+            return connected;
+        }
+
+        @Override
+        public void start(Callback callback) {
+            this.callback = callback;
+        }
+
+        @Override
+        public void stop() {
+            callback = null;
+        }
+    }
+
+    @Test
+    public void isConnected_returnsInitialState() {
+        assertTrue(new MoPubConnectivityMonitor(new FakeConnectivitySource(true)).isConnected());
+        assertFalse(new MoPubConnectivityMonitor(new FakeConnectivitySource(false)).isConnected());
+    }
+
+    @Test
+    public void isConnected_followsConnectivityChanges() {
+        FakeConnectivitySource source = new FakeConnectivitySource(true);
+        MoPubConnectivityMonitor monitor = new MoPubConnectivityMonitor(source);
+
+        source.setConnected(false);
+        assertFalse(monitor.isConnected());
+
+        source.setConnected(true);
+        assertTrue(monitor.isConnected());
+    }
+
+    @Test
+    public void isConnected_doesNotQuerySource() {
+        FakeConnectivitySource source = new FakeConnectivitySource(true);
+        MoPubConnectivityMonitor monitor = new MoPubConnectivityMonitor(source);
+        int queryCount = source.queryCount;
+
+        for (int index = 0; index < 100; index++) {
+            assertTrue(monitor.isConnected());
+        }
+        assertEquals(queryCount, source.queryCount);
+    }
+
+    @Test
+    public void stop_stopsListeningChanges() {
+        FakeConnectivitySource source = new FakeConnectivitySource(true);
+        MoPubConnectivityMonitor monitor = new MoPubConnectivityMonitor(source);
+
+        monitor.stop();
+        source.setConnected(false);
+        assertTrue(monitor.isConnected());
+    }
+}
@@ -0,0 +1,136 @@
+package com.pubmatic.openwrap.app.mopubevent;
+
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link MoPubKeywordEncoder}.
+ */
+public class MoPubKeywordEncoderTest {
+
+    /**
+     * Keyword generation used by MoPub event handlers before MoPubKeywordEncoder.
+     */
+    private static String legacyKeywords(Map<String, String> targeting, String publisherKeywords) {
+        StringBuilder keywords = new StringBuilder();
+        Iterator<Map.Entry<String, String>> iterator = targeting.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, String> entry = iterator.next();
+            keywords.append(entry.getKey()).append(":").append(entry.getValue());
+            if (iterator.hasNext()) {
+                keywords.append(",");
+            }
+        }
+        if (publisherKeywords != null && !"".equalsIgnoreCase(publisherKeywords)) {
+            keywords.append(",");
+            keywords.append(publisherKeywords);
+        }
+        return keywords.toString();
+    }
+
+    private static Map<String, String> bidTargeting() {
+        Map<String, String> targeting = new LinkedHashMap<>();
+        targeting.put("pwtsid", "7f2e4a4c-4e07-4b5c-9a4f-1a2b3c4d5e6f");
+        targeting.put("pwtbst", "1");
+        targeting.put("pwtecp", "1.20");
+        targeting.put("pwtpid", "pubmatic");
+        targeting.put("pwtsz", "320x50");
+        targeting.put("pwtplt", "banner");
+        return targeting;
+    }
+
+    @Test
+    public void encode_matchesLegacyOutputWithoutPublisherKeywords() {
+        Map<String, String> targeting = bidTargeting();
+        assertEquals(legacyKeywords(targeting, null), new MoPubKeywordEncoder().encode(targeting, null));
+        assertEquals(legacyKeywords(targeting, ""), new MoPubKeywordEncoder().encode(targeting, ""));
+    }
+
+    @Test
+    public void encode_matchesLegacyOutputWithPublisherKeywords() {
+        Map<String, String> targeting = bidTargeting();
+        String publisherKeywords = "m_age:24,m_gender:m";
+        assertEquals(legacyKeywords(targeting, publisherKeywords),
+                new MoPubKeywordEncoder().encode(targeting, publisherKeywords));
+    }
+
+    @Test
+    public void encode_matchesLegacyOutputForSingleEntry() {
+        Map<String, String> targeting = Collections.singletonMap("pwtecp", "0.50");
+        assertEquals("pwtecp:0.50", new MoPubKeywordEncoder().encode(targeting, null));
+        assertEquals(legacyKeywords(targeting, "a:b"), new MoPubKeywordEncoder().encode(targeting, "a:b"));
+    }
+
+    @Test
+    public void encode_returnsNullForMissingTargeting() {
+        MoPubKeywordEncoder encoder = new MoPubKeywordEncoder();
+        assertNull(encoder.encode(null, "a:b"));
+        assertNull(encoder.encode(new HashMap<String, String>(), "a:b"));
+    }
+
+    @Test
+    public void encode_escapesReservedCharacters() {
+        Map<String, String> targeting = new LinkedHashMap<>();
+        targeting.put("key,1", "a:b");
+        targeting.put("key2", "100%");
+        assertEquals("key%2C1:a%3Ab,key2:100%25", new MoPubKeywordEncoder().encode(targeting, null));
+    }
+
+    @Test
+    public void encode_reusesResultForSameInput() {
+        MoPubKeywordEncoder encoder = new MoPubKeywordEncoder();
+        Map<String, String> targeting = bidTargeting();
+        String first = encoder.encode(targeting, "a:b");
+        assertSame(first, encoder.encode(targeting, "a:b"));
+        assertSame(first, encoder.encode(targeting, new String("a:b")));
+        assertSame(first, encoder.encode(bidTargeting(), "a:b"));
+    }
+
+    @Test
+    public void encode_rebuildsWhenInputChanges() {
+        MoPubKeywordEncoder encoder = new MoPubKeywordEncoder();
+        Map<String, String> targeting = bidTargeting();
+        encoder.encode(targeting, "a:b");
+
+        assertEquals(legacyKeywords(targeting, "c:d"), encoder.encode(targeting, "c:d"));
+        assertEquals(legacyKeywords(targeting, null), encoder.encode(targeting, null));
+
+        Map<String, String> nextTargeting = new LinkedHashMap<>(targeting);
+        nextTargeting.put("pwtecp", "2.10");
+        assertEquals(legacyKeywords(nextTargeting, null), encoder.encode(nextTargeting, null));
+    }
+
+    @Test
+    public void encode_rebuildsWhenTargetingChangesInPlace() {
+        MoPubKeywordEncoder encoder = new MoPubKeywordEncoder();
+        Map<String, String> targeting = bidTargeting();
+        encoder.encode(targeting, null);
+
+        // Same map and size, different value
+        targeting.put("pwtecp", "2.10");
+        assertEquals(legacyKeywords(targeting, null), encoder.encode(targeting, null));
+
+        // Same map and size, different key
+        targeting.remove("pwtplt");
+        targeting.put("pwtdeal", "deal-1");
+        assertEquals(legacyKeywords(targeting, null), encoder.encode(targeting, null));
+    }
+
+    @Test
+    public void reset_clearsLastResult() {
+        MoPubKeywordEncoder encoder = new MoPubKeywordEncoder();
+        Map<String, String> targeting = bidTargeting();
+        String first = encoder.encode(targeting, null);
+        encoder.reset();
+        String second = encoder.encode(targeting, null);
+        assertEquals(first, second);
+        assertNotSame(first, second);
+    }
+}
@@ -0,0 +1,10 @@
+package com.pubmatic.openwrap.app.mopubevent;
+
+import android.app.Activity;
+
+/**
+ * Empty activity hosting the interstitial event handler in benchmarks, since MoPubInterstitial
+ * requires an Activity context.
+ */
+public class BenchmarkActivity extends Activity {
+}
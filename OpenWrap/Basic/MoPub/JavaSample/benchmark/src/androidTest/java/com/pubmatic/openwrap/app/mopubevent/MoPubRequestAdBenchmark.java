@@ -0,0 +1,246 @@
+package com.pubmatic.openwrap.app.mopubevent;
+
+import android.content.Context;
+
+import androidx.benchmark.BenchmarkState;
+import androidx.benchmark.junit4.BenchmarkRule;
+import androidx.test.core.app.ActivityScenario;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.mopub.mobileads.MoPubView;
+import com.pubmatic.sdk.common.POBAdSize;
+import com.pubmatic.sdk.openwrap.core.POBBid;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+/**
+ * Benchmarks of MoPubBannerEventHandler.requestAd() and MoPubInterstitialEventHandler.requestAd(),
+ * with loadAd() stubbed, since MoPubView.loadAd() and MoPubInterstitial.load() perform a network
+ * request. Everything else done by requestAd() on the main thread is measured, i.e. connectivity and
+ * circuit breaker checks, encoding of the bid targeting into MoPub keywords, local extras and request
+ * deadline. The device should be connected to a network, else requestAd() fails before encoding the
+ * targeting. Interstitial event handler is hosted in {@link BenchmarkActivity}.
+ * <p>
+ * Along with the time, the number of allocations per request is reported, e.g. the reuse of the
+ * last keywords for the same bid should show no allocations by the encoder.
+ * <p>
+ * Run with "./gradlew benchmark:connectedCheck" on a physical device.
+ */
+@RunWith(Parameterized.class)
+public class MoPubRequestAdBenchmark {
+
+    private static final String AD_UNIT_ID = "4f3b504fcdea4b6295ca940048e9bdbe";
+    private static final String INTERSTITIAL_AD_UNIT_ID = "d1cd0bb997894b1f9cbfc2d048ff535e";
+    /**
+     * Keywords configured by publisher on MoPubView, banner handler appends them to the targeting
+     */
+    private static final String PUBLISHER_KEYWORDS = "m_gender:m,m_age:24";
+    /**
+     * Number of distinct bids cycled in the benchmarks of new bid, i.e. the last keywords can't be reused
+     */
+    private static final int BID_COUNT = 16;
+
+    @Rule
+    public BenchmarkRule benchmarkRule = new BenchmarkRule();
+
+    @Parameterized.Parameter
+    public int targetingSize;
+
+    private POBBid[] bids;
+    private MoPubBannerEventHandler eventHandler;
+    private ActivityScenario<BenchmarkActivity> activityScenario;
+    private MoPubInterstitialEventHandler interstitialEventHandler;
+
+    @Parameterized.Parameters(name = "targetingSize={0}")
+    public static Collection<Object[]> parameters() {
+        return Arrays.asList(new Object[][]{{4}, {16}, {64}});
+    }
+
+    @Before
+    public void setUp() {
+        bids = new POBBid[BID_COUNT];
+        for (int index = 0; index < BID_COUNT; index++) {
+            bids[index] = createBid(index, targetingSize);
+        }
+        final Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        // MoPubView must be created on the main thread
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                eventHandler = new MoPubBannerEventHandler(context, AD_UNIT_ID,
+                        POBAdSize.BANNER_SIZE_320x50) {
+                    @Override
+                    void loadAd() {
+                        // No network request
+                    }
+                };
+            }
+        });
+        // MoPubInterstitial requires an Activity, onActivity() runs on the main thread
+        activityScenario = ActivityScenario.launch(BenchmarkActivity.class);
+        activityScenario.onActivity(new ActivityScenario.ActivityAction<BenchmarkActivity>() {
+            @Override
+            public void perform(BenchmarkActivity activity) {
+                interstitialEventHandler = new MoPubInterstitialEventHandler(activity,
+                        INTERSTITIAL_AD_UNIT_ID) {
+                    @Override
+                    void loadAd() {
+                        // No network request
+                    }
+                };
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                eventHandler.destroy();
+                interstitialEventHandler.destroy();
+            }
+        });
+        activityScenario.close();
+        MoPubRequestWatchdog.getInstance().setTimeout(AD_UNIT_ID, MoPubRequestWatchdog.NO_TIMEOUT);
+        MoPubRequestWatchdog.getInstance().setTimeout(INTERSTITIAL_AD_UNIT_ID,
+                MoPubRequestWatchdog.NO_TIMEOUT);
+    }
+
+    /**
+     * Banner refresh with the same bid, last keywords are reused
+     */
+    @Test
+    public void bannerRequestAd_sameBid() {
+        final POBBid bid = bids[0];
+        runOnMainThread(new Runnable() {
+            @Override
+            public void run() {
+                BenchmarkState state = benchmarkRule.getState();
+                while (state.keepRunning()) {
+                    eventHandler.requestAd(bid);
+                }
+            }
+        });
+    }
+
+    /**
+     * Every banner request with a new bid
+     */
+    @Test
+    public void bannerRequestAd_newBid() {
+        runOnMainThread(new Runnable() {
+            @Override
+            public void run() {
+                int index = 0;
+                BenchmarkState state = benchmarkRule.getState();
+                while (state.keepRunning()) {
+                    eventHandler.requestAd(bids[index]);
+                    index = (index + 1) % BID_COUNT;
+                }
+            }
+        });
+    }
+
+    /**
+     * Every banner request with a new bid, publisher keywords and request deadline are configured
+     */
+    @Test
+    public void bannerRequestAd_newBidWithKeywordsAndDeadline() {
+        eventHandler.setConfigListener(new MoPubBannerEventHandler.MoPubConfigListener() {
+            @Override
+            public void configure(MoPubView adView) {
+                adView.setKeywords(PUBLISHER_KEYWORDS);
+            }
+        });
+        MoPubRequestWatchdog.getInstance().setTimeout(AD_UNIT_ID, 5000);
+        runOnMainThread(new Runnable() {
+            @Override
+            public void run() {
+                int index = 0;
+                BenchmarkState state = benchmarkRule.getState();
+                while (state.keepRunning()) {
+                    eventHandler.requestAd(bids[index]);
+                    index = (index + 1) % BID_COUNT;
+                }
+            }
+        });
+    }
+
+    /**
+     * Every interstitial request with a new bid, MoPubInterstitial is created per request
+     */
+    @Test
+    public void interstitialRequestAd_newBid() {
+        runOnMainThread(new Runnable() {
+            @Override
+            public void run() {
+                int index = 0;
+                BenchmarkState state = benchmarkRule.getState();
+                while (state.keepRunning()) {
+                    interstitialEventHandler.requestAd(bids[index]);
+                    index = (index + 1) % BID_COUNT;
+                }
+            }
+        });
+    }
+
+    /**
+     * Every interstitial request with a new bid, along with the request deadline
+     */
+    @Test
+    public void interstitialRequestAd_newBidWithDeadline() {
+        MoPubRequestWatchdog.getInstance().setTimeout(INTERSTITIAL_AD_UNIT_ID, 5000);
+        runOnMainThread(new Runnable() {
+            @Override
+            public void run() {
+                int index = 0;
+                BenchmarkState state = benchmarkRule.getState();
+                while (state.keepRunning()) {
+                    interstitialEventHandler.requestAd(bids[index]);
+                    index = (index + 1) % BID_COUNT;
+                }
+            }
+        });
+    }
+
+    // Event handlers are used on the main thread by OpenWrap SDK
+    private static void runOnMainThread(Runnable benchmark) {
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(benchmark);
+    }
+
+    /**
+     * Creates a synthetic bid with given number of targeting parameters. POBBid is mocked with
+     * stub only setting, so that mock does not record the invocations.
+     */
+    private static POBBid createBid(int id, int targetingSize) {
+        Map<String, String> targeting = new HashMap<>();
+        targeting.put("pwtsid", "bid-" + id);
+        targeting.put("pwtbst", "1");
+        targeting.put("pwtecp", String.valueOf(1.0d + id * 0.1d));
+        targeting.put("pwtpid", "pubmatic");
+        for (int index = targeting.size(); index < targetingSize; index++) {
+            targeting.put("pwtkey" + index, "value" + id + "_" + index);
+        }
+
+        POBBid bid = mock(POBBid.class, withSettings().stubOnly());
+        when(bid.getTargetingInfo()).thenReturn(targeting);
+        when(bid.getPrice()).thenReturn(1.0d + id * 0.1d);
+        when(bid.getStatus()).thenReturn(1);
+        return bid;
+    }
+}
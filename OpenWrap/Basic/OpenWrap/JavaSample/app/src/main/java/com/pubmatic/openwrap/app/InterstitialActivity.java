@@ -1,6 +1,7 @@
 package com.pubmatic.openwrap.app;
 
 import android.os.Bundle;
+import android.os.SystemClock;
 import androidx.appcompat.app.AppCompatActivity;
 import android.util.Log;
 import android.view.View;
@@ -20,6 +21,9 @@ public class InterstitialActivity extends AppCompatActivity {
     private static final int PROFILE_ID = 1165;
 
     private POBInterstitial interstitial;
+    private InterstitialPreloadCache interstitialCache;
+    // Time at which the interstitial is requested, 0 once it is ready
+    private long loadRequestTime;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -38,21 +42,14 @@ public class InterstitialActivity extends AppCompatActivity {
         // Need not set this for every ad request(of any ad type)
         OpenWrapSDK.setApplicationInfo(appInfo);
 
-        // Create  interstitial instance by passing activity context and
-        interstitial = new POBInterstitial(this, PUB_ID,
-                PROFILE_ID,
-                OPENWRAP_AD_UNIT_ONE);
-
-        // Set Optional listener
-        interstitial.setListener(new InterstitialActivity.POBInterstitialListener());
-
+        // Interstitials are pre-loaded by the application scoped cache
+        interstitialCache = ((SampleApplication) getApplication()).getInterstitialCache();
 
         // Load Ad button
         findViewById(R.id.loadAdBtn).setOnClickListener(new View.OnClickListener() {
             @Override
             public void onClick(View v) {
-                findViewById(R.id.showAdBtn).setEnabled(false);
-                interstitial.loadAd();
+                loadInterstitialAd();
 
             }
         });
@@ -68,6 +65,42 @@ public class InterstitialActivity extends AppCompatActivity {
 
     }
 
+    /**
+     * To load interstitial ad call this method, it takes a ready interstitial from the cache if
+     * available, else loads a new one.
+     **/
+    private void loadInterstitialAd() {
+        findViewById(R.id.showAdBtn).setEnabled(false);
+        loadRequestTime = SystemClock.uptimeMillis();
+        if (null != interstitial) {
+            interstitial.destroy();
+        }
+
+        interstitial = interstitialCache.obtain(PUB_ID, PROFILE_ID, OPENWRAP_AD_UNIT_ONE);
+        if (null != interstitial) {
+            interstitial.setListener(new InterstitialActivity.POBInterstitialListener());
+            onInterstitialReady();
+            return;
+        }
+        // Create  interstitial instance by passing activity context and
+        interstitial = new POBInterstitial(this, PUB_ID,
+                PROFILE_ID,
+                OPENWRAP_AD_UNIT_ONE);
+
+        // Set Optional listener
+        interstitial.setListener(new InterstitialActivity.POBInterstitialListener());
+        interstitial.loadAd();
+    }
+
+    // Enables the show button and records the time taken by the interstitial to get ready
+    private void onInterstitialReady() {
+        findViewById(R.id.showAdBtn).setEnabled(true);
+        if (loadRequestTime > 0) {
+            interstitialCache.recordTimeToShow(SystemClock.uptimeMillis() - loadRequestTime);
+            loadRequestTime = 0;
+        }
+    }
+
     /**
      * To show interstitial ad call this method
      **/
@@ -98,7 +131,7 @@ public class InterstitialActivity extends AppCompatActivity {
             Log.d(TAG, "onAdReceived");
             //Method gets called when ad gets loaded in container
             //Here, you can show interstitial ad to user
-            findViewById(R.id.showAdBtn).setEnabled(true);
+            onInterstitialReady();
         }
 
         // Callback method notifies an error encountered while loading or rendering an ad.
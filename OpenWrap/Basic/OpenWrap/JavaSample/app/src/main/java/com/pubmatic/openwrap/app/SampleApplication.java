@@ -0,0 +1,48 @@
+package com.pubmatic.openwrap.app;
+
+import android.app.Application;
+
+import com.pubmatic.sdk.common.OpenWrapSDK;
+import com.pubmatic.sdk.common.models.POBApplicationInfo;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+
+/**
+ * Application definition which pre-loads the interstitials of the sample, so that interstitial
+ * activities get a ready interstitial when they ask for it.
+ */
+public class SampleApplication extends Application {
+
+    private static final String PUB_ID = "156276";
+    private static final String INTERSTITIAL_AD_UNIT_ID = "OpenWrapInterstitialAdUnit";
+    private static final int INTERSTITIAL_PROFILE_ID = 1165;
+    private static final int VIDEO_INTERSTITIAL_PROFILE_ID = 1757;
+
+    private InterstitialPreloadCache interstitialCache;
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+
+        // A valid Play Store Url of an Android application is required before the first ad request
+        POBApplicationInfo appInfo = new POBApplicationInfo();
+        try {
+            appInfo.setStoreURL(new URL("https://play.google.com/store/apps/details?id=com.example.android&hl=en"));
+        } catch (MalformedURLException e) {
+            e.printStackTrace();
+        }
+        OpenWrapSDK.setApplicationInfo(appInfo);
+
+        interstitialCache = new InterstitialPreloadCache(this, InterstitialPreloadCache.DEFAULT_PRELOAD_COUNT);
+        interstitialCache.preload(PUB_ID, INTERSTITIAL_PROFILE_ID, INTERSTITIAL_AD_UNIT_ID);
+        interstitialCache.preload(PUB_ID, VIDEO_INTERSTITIAL_PROFILE_ID, INTERSTITIAL_AD_UNIT_ID);
+    }
+
+    /**
+     * @return application scoped interstitial cache
+     */
+    public InterstitialPreloadCache getInterstitialCache() {
+        return interstitialCache;
+    }
+}
@@ -2,6 +2,9 @@ package sdk.pubmatic.com.javasample.customhandler;
 
 import android.annotation.SuppressLint;
 import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
 import android.util.Log;
 import android.view.View;
 
@@ -28,8 +31,92 @@ public class CustomBannerEventHandler extends DummyAdServerSDK.DummyAdServerEven
 
     private DummyAdServerSDK adServerSDK;
 
+    private final String adUnitId;
+
+    /**
+     * Flag to identify if the ad server has not responded to the current ad request yet
+     */
+    private boolean isRequestPending;
+
+    /**
+     * Deadline task to fail the ad request if the ad server does not respond in time. It is
+     * scheduled on the shared CustomRequestWatchdog and reused for every ad request.
+     */
+    private final Runnable requestDeadline = new Runnable() {
+        @Override
+        public void run() {
+            onRequestTimeout();
+        }
+    };
+
     private POBAdSize adSize;
 
+    private CustomBannerRequestBatcher requestBatcher;
+
+    private Context context;
+
+    /**
+     * Hedging policy, null if hedging is disabled
+     */
+    private CustomHedgingPolicy hedgingPolicy;
+
+    /**
+     * Ad server instance for the hedged request, created on first hedge
+     */
+    private DummyAdServerSDK hedgeAdServerSDK;
+
+    /**
+     * Custom targeting of the current ad request, sent along with the hedged request
+     */
+    private String customTargeting;
+
+    /**
+     * Time (SystemClock.uptimeMillis()) at which the current ad request is made
+     */
+    private long requestStartTime;
+
+    /**
+     * Flag to identify if the primary request has not responded yet
+     */
+    private boolean isPrimaryPending;
+
+    /**
+     * Flag to identify if the hedged request is sent and has not responded yet
+     */
+    private boolean isHedged;
+
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    /**
+     * Task to send the hedged request if the ad server does not respond in time
+     */
+    private final Runnable hedgeTask = new Runnable() {
+        @Override
+        public void run() {
+            sendHedgedRequest();
+        }
+    };
+
+    /**
+     * Listener of the hedged request, it forwards the events along with their source
+     */
+    private final DummyAdServerSDK.DummyAdServerEventListener hedgeListener =
+            new DummyAdServerSDK.DummyAdServerEventListener() {
+        @Override
+        public void onCustomEventReceived(String event) {
+            CustomBannerEventHandler.this.onCustomEventReceived(hedgeAdServerSDK, event);
+        }
+
+        @Override
+        public void onBannerLoaded(View banner) {
+            CustomBannerEventHandler.this.onBannerLoaded(hedgeAdServerSDK, banner);
+        }
+
+        @Override
+        public void onAdFailed(DummyAdServerSDK.DummyError dummyError) {
+            CustomBannerEventHandler.this.onAdFailed(hedgeAdServerSDK, dummyError);
+        }
+    };
 
     /**
      * Constructor
@@ -39,11 +126,36 @@ public class CustomBannerEventHandler extends DummyAdServerSDK.DummyAdServerEven
      * @param adSize ad size for custom ad server
      */
     public CustomBannerEventHandler(Context context, String adUnitId, POBAdSize adSize) {
+        this.context = context;
+        this.adUnitId = adUnitId;
         adServerSDK = new DummyAdServerSDK(context, adUnitId);
         adServerSDK.setAdServerEventListener(this);
         this.adSize = adSize;
     }
 
+    /**
+     * Sets the batcher to send the ad request of this banner along with the other banners of the
+     * screen as a single ad call. Ad request is sent individually if it is not set.
+     *
+     * @param requestBatcher batcher shared by the banner event handlers of the screen
+     */
+    public void setRequestBatcher(CustomBannerRequestBatcher requestBatcher) {
+        this.requestBatcher = requestBatcher;
+    }
+
+    /**
+     * Enables the hedging of ad requests, i.e. a second identical request is sent if the ad server
+     * does not respond within the delay given by the policy. The first successful response is
+     * notified to OpenWrap SDK and the other request is cancelled. A failure is notified only if the
+     * other request has already failed, as it may still succeed. Pass null to disable it, which is
+     * default.
+     *
+     * @param hedgingPolicy policy shared by the banner event handlers of the ad unit
+     */
+    public void setHedgingPolicy(CustomHedgingPolicy hedgingPolicy) {
+        this.hedgingPolicy = hedgingPolicy;
+    }
+
     /**
      * OpenWrap SDK passes its bids through this method. You should request an ad from your ad server here.
      *
@@ -51,13 +163,183 @@ public class CustomBannerEventHandler extends DummyAdServerSDK.DummyAdServerEven
      */
     @Override
     public void requestAd(POBBid bid) {
-        // If bid is valid, add bid related custom targeting on the ad request
+        // If bid is valid, add bid related custom targeting on the ad request. Targeting of the
+        // previous bid is cleared otherwise, so that it does not decide this auction.
+        customTargeting = null;
         if (null != bid) {
             Log.d(TAG, bid.toString());
-            adServerSDK.setCustomTargetting(bid.getTargetingInfo().toString());
+            customTargeting = bid.getTargetingInfo().toString();
+        }
+        adServerSDK.setCustomTargetting(customTargeting);
+        // Fail the request if the ad server does not respond in time
+        isRequestPending = true;
+        CustomRequestWatchdog.getInstance().schedule(requestDeadline, adUnitId);
+
+        // Hedge the request if the ad server does not respond within the recent latency
+        cancelHedgedRequest();
+        isPrimaryPending = true;
+        requestStartTime = SystemClock.uptimeMillis();
+        if (null != hedgingPolicy) {
+            hedgingPolicy.recordRequest();
+            mainHandler.postDelayed(hedgeTask, hedgingPolicy.getHedgeDelay());
+        }
+
+        // Load ad from the Ad server, along with other banners if batching is enabled
+        if (null != requestBatcher) {
+            requestBatcher.enqueue(adServerSDK);
+        } else {
+            adServerSDK.loadBannerAd();
+        }
+    }
+
+    private void onRequestTimeout() {
+        if (!isRequestPending) {
+            return;
+        }
+        isRequestPending = false;
+        CustomRequestWatchdog watchdog = CustomRequestWatchdog.getInstance();
+        watchdog.recordTimeout(adUnitId);
+        if (isPrimaryPending) {
+            isPrimaryPending = false;
+            // Timed out request is counted at the timeout value, its actual latency is not known
+            recordPrimaryLatency(watchdog.getTimeout(adUnitId));
+        }
+
+        // Cancel the ad request, so that its late response is dropped
+        if (null != requestBatcher) {
+            requestBatcher.cancel(adServerSDK);
+        }
+        adServerSDK.cancel();
+        cancelHedgedRequest();
+
+        if (null != eventListener) {
+            eventListener.onFailed(new POBError(POBError.TIMEOUT_ERROR, "Ad server did not respond in "
+                    + watchdog.getTimeout(adUnitId) + " milli-sec"));
+        }
+    }
+
+    /**
+     * Marks the current ad request as responded
+     *
+     * @return false if the request is already responded or timed out, i.e. the callback should be
+     * dropped
+     */
+    private boolean finishRequest() {
+        if (!isRequestPending) {
+            Log.d(TAG, "Dropping ad server callback, ad request is already finished");
+            return false;
+        }
+        isRequestPending = false;
+        CustomRequestWatchdog.getInstance().cancel(requestDeadline);
+        return true;
+    }
+
+    /**
+     * Marks the current ad request as responded by the given ad server instance and cancels the
+     * other request if the request is hedged
+     *
+     * @param source ad server instance which responded
+     * @return false if the request is already responded or timed out, i.e. the callback should be
+     * dropped
+     */
+    private boolean finishRequest(DummyAdServerSDK source) {
+        if (!finishRequest()) {
+            return false;
+        }
+        mainHandler.removeCallbacks(hedgeTask);
+        // Latency of the primary request is recorded, even if the hedged request responded first.
+        // In that case the primary request is still pending and its elapsed time is a lower bound
+        // of its latency, which is above the hedge delay. Recording the latency of the first
+        // response instead would pull the percentile down and hedge earlier and earlier.
+        boolean wasPrimaryPending = finishPrimaryRequest();
+        if (isHedged) {
+            isHedged = false;
+            if (source == hedgeAdServerSDK) {
+                if (null != hedgingPolicy) {
+                    hedgingPolicy.recordHedgeWin();
+                }
+                if (wasPrimaryPending) {
+                    if (null != requestBatcher) {
+                        requestBatcher.cancel(adServerSDK);
+                    }
+                    adServerSDK.cancel();
+                }
+            } else {
+                hedgeAdServerSDK.cancel();
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Marks the primary request as responded and records its latency
+     *
+     * @return false if the primary request has already responded
+     */
+    private boolean finishPrimaryRequest() {
+        if (!isPrimaryPending) {
+            return false;
+        }
+        isPrimaryPending = false;
+        recordPrimaryLatency(SystemClock.uptimeMillis() - requestStartTime);
+        return true;
+    }
+
+    /**
+     * Checks if the request other than the given one is still waiting for the ad server response,
+     * i.e. the current ad request may still succeed.
+     *
+     * @param source ad server instance which responded
+     * @return true if the other request of the hedged request is pending
+     */
+    private boolean isOtherRequestPending(DummyAdServerSDK source) {
+        if (!isRequestPending || !isHedged) {
+            return false;
+        }
+        return source != hedgeAdServerSDK || isPrimaryPending;
+    }
+
+    private void recordPrimaryLatency(long latency) {
+        if (null != hedgingPolicy) {
+            hedgingPolicy.recordLatency(latency);
+        }
+    }
+
+    /**
+     * Sends the hedged request if the current ad request is still pending. It is called by the
+     * hedge task once the hedge delay elapses.
+     */
+    void sendHedgedRequest() {
+        if (!isRequestPending || null == hedgingPolicy) {
+            return;
+        }
+        if (null == hedgeAdServerSDK) {
+            hedgeAdServerSDK = createHedgeAdServerSDK();
+            hedgeAdServerSDK.setAdServerEventListener(hedgeListener);
+        }
+        hedgeAdServerSDK.setCustomTargetting(customTargeting);
+        isHedged = true;
+        hedgingPolicy.recordHedge();
+        Log.d(TAG, "Sending hedged request for ad unit: " + adUnitId);
+        hedgeAdServerSDK.loadBannerAd();
+    }
+
+    /**
+     * Creates the ad server instance for the hedged request. Tests override it to control the
+     * response of the hedged request.
+     *
+     * @return ad server instance of the same ad unit
+     */
+    DummyAdServerSDK createHedgeAdServerSDK() {
+        return new DummyAdServerSDK(context, adUnitId);
+    }
+
+    private void cancelHedgedRequest() {
+        mainHandler.removeCallbacks(hedgeTask);
+        if (isHedged) {
+            isHedged = false;
+            hedgeAdServerSDK.cancel();
         }
-        // Load ad from the Ad server
-        adServerSDK.loadBannerAd();
     }
 
     /**
@@ -99,8 +381,12 @@ public class CustomBannerEventHandler extends DummyAdServerSDK.DummyAdServerEven
      */
     @Override
     public void onCustomEventReceived(String event) {
+        onCustomEventReceived(adServerSDK, event);
+    }
+
+    private void onCustomEventReceived(DummyAdServerSDK source, String event) {
         // Identify if the ad from OpenWrap partner is to be served and, if so, call 'openBidPartnerDidWin'
-        if ("SomeCustomEvent".equals(event) && null != eventListener) {
+        if ("SomeCustomEvent".equals(event) && finishRequest(source) && null != eventListener) {
             eventListener.onOpenWrapPartnerWin();
         }
     }
@@ -112,7 +398,11 @@ public class CustomBannerEventHandler extends DummyAdServerSDK.DummyAdServerEven
      */
     @Override
     public void onBannerLoaded(View banner) {
-        if (null != eventListener) {
+        onBannerLoaded(adServerSDK, banner);
+    }
+
+    private void onBannerLoaded(DummyAdServerSDK source, View banner) {
+        if (finishRequest(source) && null != eventListener) {
             eventListener.onAdServerWin(banner);
         }
     }
@@ -126,8 +416,45 @@ public class CustomBannerEventHandler extends DummyAdServerSDK.DummyAdServerEven
      */
     @Override
     public void onAdFailed(DummyAdServerSDK.DummyError dummyError) {
-        if (null != eventListener) {
-            eventListener.onFailed(new POBError(dummyError.getErrorCode(), dummyError.getErrorMsg()));
+        onAdFailed(adServerSDK, dummyError);
+    }
+
+    private void onAdFailed(DummyAdServerSDK source, DummyAdServerSDK.DummyError dummyError) {
+        // Failure of a hedged request ends the ad request only if it is the last pending request
+        if (isOtherRequestPending(source)) {
+            Log.d(TAG, "Waiting for the other request of the hedged ad request, error: "
+                    + dummyError.getErrorMsg());
+            if (source == hedgeAdServerSDK) {
+                isHedged = false;
+            } else {
+                finishPrimaryRequest();
+            }
+            return;
+        }
+        // Other request has already failed, so there is nothing to cancel and a failed hedged
+        // request is not counted as a hedge win
+        isHedged = false;
+        if (finishRequest(source) && null != eventListener) {
+            eventListener.onFailed(new POBError(getPOBErrorCode(dummyError.getErrorCode()), dummyError.getErrorMsg()));
+        }
+    }
+
+    /**
+     * Maps the ad server error code to OpenWrap error code
+     *
+     * @param errorCode DummyAdServerSDK error code
+     * @return POBError code
+     */
+    private static int getPOBErrorCode(int errorCode) {
+        switch (errorCode) {
+            case DummyAdServerSDK.ERROR_CODE_NO_FILL:
+                return POBError.NO_ADS_AVAILABLE;
+            case DummyAdServerSDK.ERROR_CODE_NETWORK:
+                return POBError.NETWORK_ERROR;
+            case DummyAdServerSDK.ERROR_CODE_SERVER:
+                return POBError.SERVER_ERROR;
+            default:
+                return POBError.INTERNAL_ERROR;
         }
     }
 
@@ -137,7 +464,20 @@ public class CustomBannerEventHandler extends DummyAdServerSDK.DummyAdServerEven
      */
     @Override
     public void destroy() {
+        isRequestPending = false;
+        CustomRequestWatchdog.getInstance().cancel(requestDeadline);
+        mainHandler.removeCallbacks(hedgeTask);
+        if (null != requestBatcher) {
+            requestBatcher.cancel(adServerSDK);
+        }
         adServerSDK.destroy();
+        if (null != hedgeAdServerSDK) {
+            hedgeAdServerSDK.destroy();
+            hedgeAdServerSDK = null;
+        }
+        isPrimaryPending = false;
+        isHedged = false;
+        context = null;
         eventListener = null;
     }
 
@@ -0,0 +1,109 @@
+package sdk.pubmatic.com.javasample.customhandler;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import sdk.pubmatic.com.javasample.dummyadserver.DummyAdServerSDK;
+
+/**
+ * This class is compatible with OpenWrap SDK v1.5.0.
+ * Collects the banner ad requests of several CustomBannerEventHandler objects within a short
+ * window and sends them to the ad server as a single ad call, i.e. one round trip for all the banner
+ * slots of a screen. The result of each slot is delivered to its own event handler.
+ * <p>
+ * Share one batcher between the event handlers of a screen using
+ * {@link CustomBannerEventHandler#setRequestBatcher(CustomBannerRequestBatcher)}. It should be used
+ * on main thread only, which is the thread OpenWrap SDK calls requestAd() on.
+ */
+public class CustomBannerRequestBatcher {
+
+    /**
+     * Default window (in milli-sec) to collect the requests
+     */
+    public static final long DEFAULT_BATCH_WINDOW = 50;
+    /**
+     * Default maximum number of slots in an ad call
+     */
+    public static final int DEFAULT_MAX_BATCH_SIZE = 8;
+
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final List<DummyAdServerSDK> pendingSlots = new ArrayList<>();
+    private final long batchWindow;
+    private final int maxBatchSize;
+
+    private final Runnable flushTask = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+
+    /**
+     * Constructor, uses default window and batch size
+     */
+    public CustomBannerRequestBatcher() {
+        this(DEFAULT_BATCH_WINDOW, DEFAULT_MAX_BATCH_SIZE);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param batchWindow  time (in milli-sec) to wait for other requests after the first request
+     * @param maxBatchSize maximum number of slots in an ad call, requests are sent immediately
+     *                     when it is reached
+     */
+    public CustomBannerRequestBatcher(long batchWindow, int maxBatchSize) {
+        if (batchWindow < 0 || maxBatchSize < 1) {
+            throw new IllegalArgumentException("Invalid batch window or size");
+        }
+        this.batchWindow = batchWindow;
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    /**
+     * Adds the banner request of a slot to the current batch. Custom targeting of the request
+     * should already be set on the ad server instance.
+     *
+     * @param adServerSDK ad server instance of the slot
+     */
+    void enqueue(DummyAdServerSDK adServerSDK) {
+        if (pendingSlots.contains(adServerSDK)) {
+            // Slot requested again in the same window, latest targeting is sent
+            return;
+        }
+        pendingSlots.add(adServerSDK);
+        if (pendingSlots.size() >= maxBatchSize) {
+            flush();
+        } else if (pendingSlots.size() == 1) {
+            mainHandler.postDelayed(flushTask, batchWindow);
+        }
+    }
+
+    /**
+     * Removes the pending request of a slot, e.g. when its event handler is destroyed
+     *
+     * @param adServerSDK ad server instance of the slot
+     */
+    void cancel(DummyAdServerSDK adServerSDK) {
+        pendingSlots.remove(adServerSDK);
+        if (pendingSlots.isEmpty()) {
+            mainHandler.removeCallbacks(flushTask);
+        }
+    }
+
+    /**
+     * Sends the pending requests immediately as a single ad call
+     */
+    public void flush() {
+        mainHandler.removeCallbacks(flushTask);
+        if (pendingSlots.isEmpty()) {
+            return;
+        }
+        List<DummyAdServerSDK> slots = new ArrayList<>(pendingSlots);
+        pendingSlots.clear();
+        DummyAdServerSDK.loadBannerAds(slots);
+    }
+}
@@ -0,0 +1,140 @@
+package sdk.pubmatic.com.javasample.customhandler;
+
+import java.util.Arrays;
+
+/**
+ * This class is compatible with OpenWrap SDK v1.5.0.
+ * Policy to hedge the banner ad requests of the custom ad server. If the ad server does not respond
+ * within the given percentile of recent request latencies, event handler sends a second identical
+ * request, the first response wins and the other request is cancelled.
+ * <p>
+ * Latencies are kept in a fixed size window of recent requests, the initial delay is used until
+ * the window has enough samples. Share one instance between the event handlers of an ad unit using
+ * {@link CustomBannerEventHandler#setHedgingPolicy(CustomHedgingPolicy)}. It should be used on main
+ * thread only.
+ */
+public class CustomHedgingPolicy {
+
+    /**
+     * Default percentile of recent latencies to wait for before hedging
+     */
+    public static final double DEFAULT_PERCENTILE = 0.95d;
+    /**
+     * Default time (in milli-sec) to wait before hedging, until enough latencies are recorded
+     */
+    public static final long DEFAULT_INITIAL_DELAY = 1000;
+
+    /**
+     * Number of recent latencies kept
+     */
+    private static final int LATENCY_WINDOW = 64;
+    /**
+     * Number of latencies required before the percentile is used
+     */
+    private static final int MIN_SAMPLES = 10;
+
+    private final double percentile;
+    private final long initialDelay;
+    private final long[] latencies = new long[LATENCY_WINDOW];
+    private final long[] sortedLatencies = new long[LATENCY_WINDOW];
+    private int sampleCount;
+    private int nextSample;
+    private long hedgeDelay = -1;
+
+    private long requestCount;
+    private long hedgedCount;
+    private long hedgeWinCount;
+
+    /**
+     * Constructor with default percentile and initial delay
+     */
+    public CustomHedgingPolicy() {
+        this(DEFAULT_PERCENTILE, DEFAULT_INITIAL_DELAY);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param percentile   percentile of recent latencies to wait for, in range (0, 1]
+     * @param initialDelay time (in milli-sec) to wait until enough latencies are recorded
+     */
+    public CustomHedgingPolicy(double percentile, long initialDelay) {
+        if (percentile <= 0.0d || percentile > 1.0d || initialDelay < 0) {
+            throw new IllegalArgumentException("Invalid percentile or initial delay");
+        }
+        this.percentile = percentile;
+        this.initialDelay = initialDelay;
+    }
+
+    /**
+     * @return time (in milli-sec) to wait for the response before sending the hedged request
+     */
+    public long getHedgeDelay() {
+        if (sampleCount < MIN_SAMPLES) {
+            return initialDelay;
+        }
+        // Percentile is computed again only after a new latency is recorded
+        if (hedgeDelay < 0) {
+            System.arraycopy(latencies, 0, sortedLatencies, 0, sampleCount);
+            Arrays.sort(sortedLatencies, 0, sampleCount);
+            int index = (int) Math.ceil(percentile * sampleCount) - 1;
+            hedgeDelay = sortedLatencies[Math.max(0, index)];
+        }
+        return hedgeDelay;
+    }
+
+    /**
+     * Records the time from sending an ad request to its first response
+     *
+     * @param latency latency in milli-sec
+     */
+    void recordLatency(long latency) {
+        latencies[nextSample] = latency;
+        nextSample = (nextSample + 1) % LATENCY_WINDOW;
+        sampleCount = Math.min(sampleCount + 1, LATENCY_WINDOW);
+        hedgeDelay = -1;
+    }
+
+    void recordRequest() {
+        requestCount++;
+    }
+
+    void recordHedge() {
+        hedgedCount++;
+    }
+
+    void recordHedgeWin() {
+        hedgeWinCount++;
+    }
+
+    /**
+     * @return number of ad requests made with this policy
+     */
+    public long getRequestCount() {
+        return requestCount;
+    }
+
+    /**
+     * @return number of ad requests for which a hedged request is sent
+     */
+    public long getHedgedCount() {
+        return hedgedCount;
+    }
+
+    /**
+     * @return number of hedged requests which responded before the original request, i.e. hedging
+     * paid off
+     */
+    public long getHedgeWinCount() {
+        return hedgeWinCount;
+    }
+
+    /**
+     * Resets the counters, recorded latencies are retained
+     */
+    public void resetCounters() {
+        requestCount = 0;
+        hedgedCount = 0;
+        hedgeWinCount = 0;
+    }
+}
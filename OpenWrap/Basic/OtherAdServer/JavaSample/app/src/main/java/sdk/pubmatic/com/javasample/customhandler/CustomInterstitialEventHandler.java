@@ -26,6 +26,24 @@ public class CustomInterstitialEventHandler extends DummyAdServerSDK.DummyAdServ
 
     private DummyAdServerSDK adServerSDK;
 
+    private final String adUnitId;
+
+    /**
+     * Flag to identify if the ad server has not responded to the current ad request yet
+     */
+    private boolean isRequestPending;
+
+    /**
+     * Deadline task to fail the ad request if the ad server does not respond in time. It is
+     * scheduled on the shared CustomRequestWatchdog and reused for every ad request.
+     */
+    private final Runnable requestDeadline = new Runnable() {
+        @Override
+        public void run() {
+            onRequestTimeout();
+        }
+    };
+
     /**
      * Constructor
      *
@@ -33,6 +51,7 @@ public class CustomInterstitialEventHandler extends DummyAdServerSDK.DummyAdServ
      * @param adUnitId ad server ad unit ID
      */
     public CustomInterstitialEventHandler(Context context, String adUnitId) {
+        this.adUnitId = adUnitId;
         adServerSDK = new DummyAdServerSDK(context, adUnitId);
         adServerSDK.setAdServerEventListener(this);
     }
@@ -44,15 +63,55 @@ public class CustomInterstitialEventHandler extends DummyAdServerSDK.DummyAdServ
      */
     @Override
     public void requestAd(POBBid bid) {
-        // If bid is valid, add bid related custom targeting on the ad request
+        // If bid is valid, add bid related custom targeting on the ad request. Targeting of the
+        // previous bid is cleared otherwise, so that it does not decide this auction.
+        String customTargeting = null;
         if (null != bid) {
             Log.d(TAG, bid.toString());
-            adServerSDK.setCustomTargetting(bid.getTargetingInfo().toString());
+            customTargeting = bid.getTargetingInfo().toString();
         }
+        adServerSDK.setCustomTargetting(customTargeting);
+        // Fail the request if the ad server does not respond in time
+        isRequestPending = true;
+        CustomRequestWatchdog.getInstance().schedule(requestDeadline, adUnitId);
+
         // Load ad from the ad server
         adServerSDK.loadInterstitialAd();
     }
 
+    private void onRequestTimeout() {
+        if (!isRequestPending) {
+            return;
+        }
+        isRequestPending = false;
+        CustomRequestWatchdog watchdog = CustomRequestWatchdog.getInstance();
+        watchdog.recordTimeout(adUnitId);
+
+        // Cancel the ad request, so that its late response is dropped
+        adServerSDK.cancel();
+
+        if (null != eventListener) {
+            eventListener.onFailed(new POBError(POBError.TIMEOUT_ERROR, "Ad server did not respond in "
+                    + watchdog.getTimeout(adUnitId) + " milli-sec"));
+        }
+    }
+
+    /**
+     * Marks the current ad request as responded
+     *
+     * @return false if the request is already responded or timed out, i.e. the callback should be
+     * dropped
+     */
+    private boolean finishRequest() {
+        if (!isRequestPending) {
+            Log.d(TAG, "Dropping ad server callback, ad request is already finished");
+            return false;
+        }
+        isRequestPending = false;
+        CustomRequestWatchdog.getInstance().cancel(requestDeadline);
+        return true;
+    }
+
     /**
      * Setter method
      *
@@ -85,7 +144,7 @@ public class CustomInterstitialEventHandler extends DummyAdServerSDK.DummyAdServ
     @Override
     public void onCustomEventReceived(String event) {
         // Identify if the ad from OpenWrap partner is to be served and, if so, call 'openBidPartnerDidWin'
-        if ("SomeCustomEvent".equals(event) && null != eventListener) {
+        if ("SomeCustomEvent".equals(event) && finishRequest() && null != eventListener) {
             eventListener.onOpenWrapPartnerWin();
         }
     }
@@ -95,7 +154,7 @@ public class CustomInterstitialEventHandler extends DummyAdServerSDK.DummyAdServ
      */
     @Override
     public void onInterstitialReceived() {
-        if (null != eventListener) {
+        if (finishRequest() && null != eventListener) {
             eventListener.onAdServerWin();
         }
     }
@@ -109,8 +168,27 @@ public class CustomInterstitialEventHandler extends DummyAdServerSDK.DummyAdServ
      */
     @Override
     public void onAdFailed(DummyAdServerSDK.DummyError dummyError) {
-        if (null != eventListener) {
-            eventListener.onFailed(new POBError(dummyError.getErrorCode(), dummyError.getErrorMsg()));
+        if (finishRequest() && null != eventListener) {
+            eventListener.onFailed(new POBError(getPOBErrorCode(dummyError.getErrorCode()), dummyError.getErrorMsg()));
+        }
+    }
+
+    /**
+     * Maps the ad server error code to OpenWrap error code
+     *
+     * @param errorCode DummyAdServerSDK error code
+     * @return POBError code
+     */
+    private static int getPOBErrorCode(int errorCode) {
+        switch (errorCode) {
+            case DummyAdServerSDK.ERROR_CODE_NO_FILL:
+                return POBError.NO_ADS_AVAILABLE;
+            case DummyAdServerSDK.ERROR_CODE_NETWORK:
+                return POBError.NETWORK_ERROR;
+            case DummyAdServerSDK.ERROR_CODE_SERVER:
+                return POBError.SERVER_ERROR;
+            default:
+                return POBError.INTERNAL_ERROR;
         }
     }
 
@@ -120,6 +198,8 @@ public class CustomInterstitialEventHandler extends DummyAdServerSDK.DummyAdServ
      */
     @Override
     public void destroy() {
+        isRequestPending = false;
+        CustomRequestWatchdog.getInstance().cancel(requestDeadline);
         adServerSDK.destroy();
         eventListener = null;
     }
@@ -0,0 +1,147 @@
+package sdk.pubmatic.com.javasample.customhandler;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class is compatible with OpenWrap SDK v1.5.0.
+ * Shared watchdog used by all the custom event handlers to bound the time taken by the ad server
+ * SDK to respond to an ad request. Event handler schedules a deadline when it makes the ad request
+ * and cancels it when the ad server SDK responds. If the deadline expires first, event handler
+ * cancels the ad request, fails it with a timeout error and drops the late ad server callbacks of
+ * that request.
+ * <p>
+ * Deadline can be configured per ad server ad unit, all the deadlines are posted on a single main
+ * looper handler.
+ * <p>
+ * Deadlines are opt-in, no deadline is scheduled unless a timeout is set with
+ * {@link #setDefaultTimeout(long)} or {@link #setTimeout(String, long)}.
+ */
+public final class CustomRequestWatchdog {
+
+    private static final String TAG = "CustomRequestWatchdog";
+
+    /**
+     * Timeout value which disables the deadline, i.e. ad request waits as long as the SDK takes
+     */
+    public static final long NO_TIMEOUT = 0;
+
+    private static CustomRequestWatchdog instance;
+
+    /**
+     * Main looper handler, shared by all the deadlines
+     */
+    private final Handler mainHandler;
+    /**
+     * Request timeout per ad server ad unit
+     */
+    private final Map<String, Long> timeouts = new ConcurrentHashMap<>();
+    /**
+     * Number of ad requests failed due to timeout
+     */
+    private final AtomicLong timeoutCount = new AtomicLong();
+    private volatile long defaultTimeout = NO_TIMEOUT;
+
+    private CustomRequestWatchdog() {
+        mainHandler = new Handler(Looper.getMainLooper());
+    }
+
+    /**
+     * Returns the shared watchdog instance
+     *
+     * @return CustomRequestWatchdog instance
+     */
+    public static synchronized CustomRequestWatchdog getInstance() {
+        if (instance == null) {
+            instance = new CustomRequestWatchdog();
+        }
+        return instance;
+    }
+
+    /**
+     * Sets the request timeout of the ad units which do not have their own timeout. Pass
+     * {@link #NO_TIMEOUT} to disable their deadlines again.
+     *
+     * @param timeoutMillis timeout in milli-sec
+     */
+    public void setDefaultTimeout(long timeoutMillis) {
+        if (timeoutMillis < 0) {
+            throw new IllegalArgumentException("Timeout should not be negative");
+        }
+        defaultTimeout = timeoutMillis;
+    }
+
+    /**
+     * Sets the request timeout of the given ad unit. Pass zero or a negative value to use the
+     * default timeout.
+     *
+     * @param adUnitId      ad server ad unit ID
+     * @param timeoutMillis timeout in milli-sec
+     */
+    public void setTimeout(String adUnitId, long timeoutMillis) {
+        if (timeoutMillis > 0) {
+            timeouts.put(adUnitId, timeoutMillis);
+        } else {
+            timeouts.remove(adUnitId);
+        }
+    }
+
+    /**
+     * Returns the request timeout of the given ad unit.
+     *
+     * @param adUnitId ad server ad unit ID
+     * @return timeout in milli-sec, {@link #NO_TIMEOUT} if the deadline is disabled
+     */
+    public long getTimeout(String adUnitId) {
+        Long timeout = adUnitId != null ? timeouts.get(adUnitId) : null;
+        return timeout != null ? timeout : defaultTimeout;
+    }
+
+    /**
+     * Schedules the deadline of an ad request on main thread. Any previously scheduled run of the
+     * same deadline is cancelled. Nothing is scheduled if the ad unit has no timeout.
+     *
+     * @param deadline task to be executed if the ad server SDK does not respond in time
+     * @param adUnitId ad server ad unit ID
+     */
+    void schedule(Runnable deadline, String adUnitId) {
+        mainHandler.removeCallbacks(deadline);
+        long timeout = getTimeout(adUnitId);
+        if (timeout > NO_TIMEOUT) {
+            mainHandler.postDelayed(deadline, timeout);
+        }
+    }
+
+    /**
+     * Cancels the scheduled deadline, if any.
+     *
+     * @param deadline task passed to {@link #schedule(Runnable, String)}
+     */
+    void cancel(Runnable deadline) {
+        mainHandler.removeCallbacks(deadline);
+    }
+
+    void recordTimeout(String adUnitId) {
+        timeoutCount.incrementAndGet();
+        Log.w(TAG, "Ad server request timed out for ad unit: " + adUnitId);
+    }
+
+    /**
+     * @return number of ad requests failed due to timeout
+     */
+    public long getTimeoutCount() {
+        return timeoutCount.get();
+    }
+
+    /**
+     * Resets the timeout counter
+     */
+    public void resetCounters() {
+        timeoutCount.set(0);
+    }
+}
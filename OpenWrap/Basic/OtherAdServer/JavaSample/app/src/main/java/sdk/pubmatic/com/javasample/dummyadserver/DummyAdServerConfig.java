@@ -0,0 +1,147 @@
+package sdk.pubmatic.com.javasample.dummyadserver;
+
+import java.util.Random;
+
+/**
+ * Configuration of the simulated ad server. When set on {@link DummyAdServerSDK}, ad requests are
+ * served on a background thread after a simulated network latency and the result is decided by
+ * the configured fill rate, error rate and the ad server's own line item price compared with the
+ * partner bid price sent in custom targeting. Callbacks are delivered on main thread.
+ */
+public class DummyAdServerConfig {
+
+    /**
+     * Interface to generate the latency of an ad request
+     */
+    public interface LatencyDistribution {
+        /**
+         * @param random random number generator
+         * @return latency in milli-sec
+         */
+        long nextLatency(Random random);
+    }
+
+    private LatencyDistribution latencyDistribution = fixed(0);
+    private double fillRate = 1.0d;
+    private double errorRate;
+    private double adServerPrice;
+    private long seed = System.nanoTime();
+    private Random random = new Random(seed);
+
+    /**
+     * @param latency latency in milli-sec
+     * @return distribution which always returns the given latency
+     */
+    public static LatencyDistribution fixed(final long latency) {
+        return new LatencyDistribution() {
+            @Override
+            public long nextLatency(Random random) {
+                return latency;
+            }
+        };
+    }
+
+    /**
+     * @param minLatency minimum latency in milli-sec
+     * @param maxLatency maximum latency in milli-sec
+     * @return distribution which returns latency uniformly distributed between given values
+     */
+    public static LatencyDistribution uniform(final long minLatency, final long maxLatency) {
+        if (minLatency < 0 || maxLatency < minLatency) {
+            throw new IllegalArgumentException("Invalid latency range");
+        }
+        return new LatencyDistribution() {
+            @Override
+            public long nextLatency(Random random) {
+                return minLatency + (long) (random.nextDouble() * (maxLatency - minLatency));
+            }
+        };
+    }
+
+    /**
+     * Log-normal distribution, which is close to the real network latency with a long tail.
+     *
+     * @param medianLatency median latency in milli-sec
+     * @param sigma         standard deviation of the underlying normal distribution, e.g. 0.5
+     * @return log-normal latency distribution
+     */
+    public static LatencyDistribution logNormal(final long medianLatency, final double sigma) {
+        if (medianLatency <= 0 || sigma < 0) {
+            throw new IllegalArgumentException("Invalid log-normal parameters");
+        }
+        return new LatencyDistribution() {
+            @Override
+            public long nextLatency(Random random) {
+                return Math.round(medianLatency * Math.exp(sigma * random.nextGaussian()));
+            }
+        };
+    }
+
+    public LatencyDistribution getLatencyDistribution() {
+        return latencyDistribution;
+    }
+
+    /**
+     * @param latencyDistribution latency of the ad requests
+     */
+    public void setLatencyDistribution(LatencyDistribution latencyDistribution) {
+        this.latencyDistribution = latencyDistribution != null ? latencyDistribution : fixed(0);
+    }
+
+    public double getFillRate() {
+        return fillRate;
+    }
+
+    /**
+     * @param fillRate fraction of requests for which ad server has its own ad, in range [0, 1]
+     */
+    public void setFillRate(double fillRate) {
+        this.fillRate = clamp(fillRate);
+    }
+
+    public double getErrorRate() {
+        return errorRate;
+    }
+
+    /**
+     * @param errorRate fraction of requests which fail with network/server error, in range [0, 1]
+     */
+    public void setErrorRate(double errorRate) {
+        this.errorRate = clamp(errorRate);
+    }
+
+    public double getAdServerPrice() {
+        return adServerPrice;
+    }
+
+    /**
+     * @param adServerPrice price of the ad server's own line item, partner bid wins only if its
+     *                      price is higher
+     */
+    public void setAdServerPrice(double adServerPrice) {
+        this.adServerPrice = adServerPrice;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * @param seed seed of the random number generator, to reproduce a simulation
+     */
+    public void setSeed(long seed) {
+        this.seed = seed;
+        random = new Random(seed);
+    }
+
+    /**
+     * @return random number generator shared by all the ad server instances using this configuration
+     */
+    Random getRandom() {
+        return random;
+    }
+
+    private static double clamp(double rate) {
+        return Math.max(0.0d, Math.min(1.0d, rate));
+    }
+}
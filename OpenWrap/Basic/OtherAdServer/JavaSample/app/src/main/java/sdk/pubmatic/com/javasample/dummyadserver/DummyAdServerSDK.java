@@ -1,16 +1,70 @@
 package sdk.pubmatic.com.javasample.dummyadserver;
 
 import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
 import android.view.View;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
 /**
  * Emulates an Ad Server SDK
  */
 public class DummyAdServerSDK {
 
+    /**
+     * Error codes of DummyError
+     */
+    public static final int ERROR_CODE_INTERNAL = -1;
+    public static final int ERROR_CODE_NO_FILL = 1;
+    public static final int ERROR_CODE_NETWORK = 2;
+    public static final int ERROR_CODE_SERVER = 3;
+
+    /**
+     * Targeting key of partner bid price
+     */
+    private static final String PARTNER_PRICE_KEY = "pwtecp";
+
+    /**
+     * Results of a simulated ad request
+     */
+    static final int RESULT_NETWORK_ERROR = 0;
+    static final int RESULT_SERVER_ERROR = 1;
+    static final int RESULT_NO_FILL = 2;
+    static final int RESULT_PARTNER_WIN = 3;
+    static final int RESULT_AD_SERVER_WIN = 4;
+
+    /**
+     * Background thread of the simulated ad server, shared by all the instances
+     */
+    private static ScheduledExecutorService simulationExecutor;
+    /**
+     * Simulation configuration used by all the instances which do not have their own configuration
+     */
+    private static volatile DummyAdServerConfig defaultSimulationConfig;
+
     private DummyAdServerEventListener adServerEventListener;
     private Context context;
     private String adUnitId;
+    private Map<String, String> customTargeting = Collections.emptyMap();
+    /**
+     * Simulation configuration, null if simulation is disabled
+     */
+    private DummyAdServerConfig simulationConfig;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    /**
+     * Id of the latest request, responses of older requests are dropped
+     */
+    private int requestId;
     /**
      * Constructor
      * @param context Android Application context
@@ -35,6 +89,32 @@ public class DummyAdServerSDK {
      */
     public void setCustomTargetting(String customTargetting){
         // Sets custom targeting to be sent in the ad call
+        customTargeting = parseTargeting(customTargetting);
+    }
+
+    /**
+     * Enables the simulation of a real ad server, i.e. latency, fill rate, errors and bid price
+     * based decision. Pass null to disable it.
+     * @param config simulation configuration
+     */
+    public void setSimulationConfig(DummyAdServerConfig config){
+        simulationConfig = config;
+    }
+
+    /**
+     * Enables the simulation for all the ad server instances which do not have their own
+     * configuration, e.g. to load test the event handlers. Pass null to disable it.
+     * @param config simulation configuration
+     */
+    public static void setDefaultSimulationConfig(DummyAdServerConfig config){
+        defaultSimulationConfig = config;
+    }
+
+    /**
+     * @return simulation configuration in effect, null if simulation is disabled
+     */
+    private DummyAdServerConfig getSimulationConfig(){
+        return null != simulationConfig ? simulationConfig : defaultSimulationConfig;
     }
 
     /**
@@ -43,7 +123,7 @@ public class DummyAdServerSDK {
     public void loadBannerAd(){
         if(null == context){
             if(null != adServerEventListener){
-                adServerEventListener.onAdFailed(new DummyError(-1, "Internal Error: Context should not be null."));
+                adServerEventListener.onAdFailed(new DummyError(ERROR_CODE_INTERNAL, "Internal Error: Context should not be null."));
             }
             return;
         }
@@ -51,6 +131,10 @@ public class DummyAdServerSDK {
         // auction, based on provided targeting information. Then, the ad server SDK
         // will either render the banner ad or indicate that a partner ad should be
         // rendered.
+        if(null != getSimulationConfig()){
+            simulateAdRequest(true);
+            return;
+        }
         if(null != adServerEventListener){
             if("OtherASBannerAdUnit".equals(adUnitId)){
                 adServerEventListener.onCustomEventReceived("SomeCustomEvent");
@@ -60,6 +144,27 @@ public class DummyAdServerSDK {
         }
     }
 
+    /**
+     * Loads banner ads of several slots from the ad server in a single ad call. Each slot is an
+     * ad server instance with its own ad unit, custom targeting and listener, the result of each
+     * slot is delivered to its own listener.
+     * @param adServerSDKs ad server instances of the banner slots
+     */
+    public static void loadBannerAds(List<DummyAdServerSDK> adServerSDKs){
+        List<DummyAdServerSDK> simulatedSlots = new ArrayList<>(adServerSDKs.size());
+        for(DummyAdServerSDK adServerSDK : adServerSDKs){
+            // Slots without simulation (or with invalid context) are served as individual requests
+            if(null == adServerSDK.context || null == adServerSDK.getSimulationConfig()){
+                adServerSDK.loadBannerAd();
+            }else {
+                simulatedSlots.add(adServerSDK);
+            }
+        }
+        if(!simulatedSlots.isEmpty()){
+            simulateAdRequests(simulatedSlots, true);
+        }
+    }
+
     /**
      * loads an interstitial ad from the ad server
      */
@@ -68,6 +173,10 @@ public class DummyAdServerSDK {
         // auction, based on provided targeting information. Then, the ad server SDK
         // will either load the interstitial ad or indicate that a partner ad should
         // be rendered.
+        if(null != getSimulationConfig()){
+            simulateAdRequest(false);
+            return;
+        }
         if(null != adServerEventListener){
             if("OtherASInterstitialAdUnit".equals(adUnitId)){
                 adServerEventListener.onCustomEventReceived("SomeCustomEvent");
@@ -85,14 +194,198 @@ public class DummyAdServerSDK {
         // interstitial ad
     }
 
+    /**
+     * Cancels the pending ad request, its response is not delivered to the listener
+     */
+    public void cancel(){
+        // Drop the responses of pending requests
+        requestId++;
+    }
+
     /**
      * method to do clean up
      */
     public void destroy(){
+        cancel();
         adServerEventListener = null;
         context = null;
     }
 
+    /**
+     * Parses the custom targeting, which is in Map.toString() format i.e. "{key1=value1, key2=value2}"
+     * @param targeting custom targeting
+     * @return map of targeting key and value
+     */
+    static Map<String, String> parseTargeting(String targeting){
+        if(null == targeting){
+            return Collections.emptyMap();
+        }
+        String content = targeting.trim();
+        if(content.startsWith("{") && content.endsWith("}")){
+            content = content.substring(1, content.length() - 1);
+        }
+        Map<String, String> params = new HashMap<>();
+        for(String pair : content.split(",")){
+            String param = pair.trim();
+            int index = param.indexOf('=');
+            if(index > 0){
+                params.put(param.substring(0, index), param.substring(index + 1).trim());
+            }
+        }
+        return params;
+    }
+
+    /**
+     * @param targeting parsed custom targeting
+     * @return price of the partner bid from custom targeting, 0 if not available
+     */
+    static double getPartnerPrice(Map<String, String> targeting){
+        String price = targeting.get(PARTNER_PRICE_KEY);
+        if(null != price){
+            try {
+                return Double.parseDouble(price);
+            } catch (NumberFormatException e) {
+                return 0.0d;
+            }
+        }
+        return 0.0d;
+    }
+
+    /**
+     * Serves the ad request on background thread after simulated latency and delivers the result
+     * on main thread.
+     * @param isBanner true for banner request, false for interstitial
+     */
+    private void simulateAdRequest(boolean isBanner){
+        simulateAdRequests(Collections.singletonList(this), isBanner);
+    }
+
+    /**
+     * Serves the ad requests of several slots as a single ad call, i.e. all the slots share the
+     * simulated latency and network/server error of the first slot's configuration, while the fill
+     * and auction is decided per slot. Results are delivered on main thread.
+     * @param adServerSDKs ad server instances of the slots
+     * @param isBanner true for banner request, false for interstitial
+     */
+    private static void simulateAdRequests(final List<DummyAdServerSDK> adServerSDKs, final boolean isBanner){
+        final int count = adServerSDKs.size();
+        final DummyAdServerConfig config = adServerSDKs.get(0).getSimulationConfig();
+        Random random = config.getRandom();
+        // Random values are drawn on caller thread, so that a seeded simulation is reproducible for
+        // the same order of requests
+        final long latency = Math.max(0, config.getLatencyDistribution().nextLatency(random));
+        final double errorSample = random.nextDouble();
+        final int[] requests = new int[count];
+        final double[] partnerPrices = new double[count];
+        final double[] fillSamples = new double[count];
+        final DummyAdServerConfig[] configs = new DummyAdServerConfig[count];
+        for(int index = 0; index < count; index++){
+            DummyAdServerSDK adServerSDK = adServerSDKs.get(index);
+            requests[index] = ++adServerSDK.requestId;
+            partnerPrices[index] = getPartnerPrice(adServerSDK.customTargeting);
+            fillSamples[index] = random.nextDouble();
+            configs[index] = adServerSDK.getSimulationConfig();
+        }
+
+        getSimulationExecutor().schedule(new Runnable() {
+            @Override
+            public void run() {
+                final int[] results = new int[count];
+                for(int index = 0; index < count; index++){
+                    results[index] = getSimulatedResult(config, errorSample, configs[index], fillSamples[index], partnerPrices[index]);
+                }
+                adServerSDKs.get(0).mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        for(int index = 0; index < count; index++){
+                            DummyAdServerSDK adServerSDK = adServerSDKs.get(index);
+                            if(requests[index] == adServerSDK.requestId){
+                                adServerSDK.deliverResult(results[index], isBanner);
+                            }
+                        }
+                    }
+                });
+            }
+        }, latency, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Decides the result of a simulated ad request of a slot. Error is decided by the configuration
+     * of the ad call, the fill and auction by the configuration of the slot.
+     * @param callConfig simulation configuration of the ad call
+     * @param errorSample random sample to decide the error, shared by all the slots of the ad call
+     * @param slotConfig simulation configuration of the slot
+     * @param fillSample random sample to decide the fill
+     * @param partnerPrice price of the partner bid
+     * @return result of the ad request
+     */
+    static int getSimulatedResult(DummyAdServerConfig callConfig, double errorSample, DummyAdServerConfig slotConfig,
+                                  double fillSample, double partnerPrice){
+        if(errorSample < callConfig.getErrorRate()){
+            // Split the errors equally between server and network errors
+            return errorSample < callConfig.getErrorRate() / 2 ? RESULT_SERVER_ERROR : RESULT_NETWORK_ERROR;
+        }
+        return getAuctionResult(slotConfig, fillSample, partnerPrice);
+    }
+
+    /**
+     * Decides the result of ad server auction of a slot
+     * @param config simulation configuration of the slot
+     * @param fillSample random sample to decide the fill
+     * @param partnerPrice price of the partner bid
+     * @return result of the auction
+     */
+    private static int getAuctionResult(DummyAdServerConfig config, double fillSample, double partnerPrice){
+        boolean hasAdServerAd = fillSample < config.getFillRate();
+        if(partnerPrice > 0.0d && (!hasAdServerAd || partnerPrice > config.getAdServerPrice())){
+            return RESULT_PARTNER_WIN;
+        }else if(hasAdServerAd){
+            return RESULT_AD_SERVER_WIN;
+        }
+        return RESULT_NO_FILL;
+    }
+
+    private void deliverResult(int result, boolean isBanner){
+        if(null == adServerEventListener){
+            return;
+        }
+        switch (result){
+            case RESULT_NETWORK_ERROR:
+                adServerEventListener.onAdFailed(new DummyError(ERROR_CODE_NETWORK, "Simulated network error."));
+                break;
+            case RESULT_SERVER_ERROR:
+                adServerEventListener.onAdFailed(new DummyError(ERROR_CODE_SERVER, "Simulated server error."));
+                break;
+            case RESULT_NO_FILL:
+                adServerEventListener.onAdFailed(new DummyError(ERROR_CODE_NO_FILL, "No ad available."));
+                break;
+            case RESULT_PARTNER_WIN:
+                adServerEventListener.onCustomEventReceived("SomeCustomEvent");
+                break;
+            default:
+                if(!isBanner){
+                    adServerEventListener.onInterstitialReceived();
+                }else if(null != context){
+                    adServerEventListener.onBannerLoaded(new View(context));
+                }
+                break;
+        }
+    }
+
+    private static synchronized ScheduledExecutorService getSimulationExecutor(){
+        if(null == simulationExecutor){
+            simulationExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "DummyAdServer");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return simulationExecutor;
+    }
+
     /**
      * Listener to receive ad success/failure events.
      */
@@ -0,0 +1,223 @@
+package sdk.pubmatic.com.javasample.customhandler;
+
+import android.view.View;
+
+import com.pubmatic.sdk.common.POBAdSize;
+import com.pubmatic.sdk.openwrap.banner.POBBannerEventListener;
+
+import org.junit.Test;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+
+import sdk.pubmatic.com.javasample.dummyadserver.DummyAdServerSDK;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for the terminal callbacks of a hedged request of
+ * {@link CustomBannerEventHandler}. The primary request is held by the batcher, its responses are
+ * delivered by calling the handler directly. The hedged request is held by {@link FakeAdServerSDK}
+ * until the test delivers its response.
+ */
+public class CustomBannerEventHandlerTest {
+
+    private final List<String> terminalCallbacks = new ArrayList<>();
+
+    private FakeAdServerSDK hedgeAdServerSDK;
+
+    @Test
+    public void hedgedRequest_waitsForPrimaryAfterHedgeFailure() {
+        CustomBannerEventHandler handler = createHedgedHandler();
+        handler.requestAd(null);
+        handler.sendHedgedRequest();
+
+        // Hedged request fails while the primary request is still pending
+        hedgeAdServerSDK.fail();
+        assertTrue(terminalCallbacks.isEmpty());
+
+        handler.onBannerLoaded(null);
+        assertEquals(1, terminalCallbacks.size());
+        assertEquals("onAdServerWin", terminalCallbacks.get(0));
+    }
+
+    @Test
+    public void hedgedRequest_waitsForHedgeAfterPrimaryFailure() {
+        CustomBannerEventHandler handler = createHedgedHandler();
+        handler.requestAd(null);
+        handler.sendHedgedRequest();
+
+        // Primary request fails while the hedged request is still pending
+        handler.onAdFailed(createError());
+        assertTrue(terminalCallbacks.isEmpty());
+        assertFalse(hedgeAdServerSDK.isCancelled);
+
+        hedgeAdServerSDK.succeed();
+        assertEquals(1, terminalCallbacks.size());
+        assertEquals("onAdServerWin", terminalCallbacks.get(0));
+    }
+
+    @Test
+    public void hedgedRequest_failsWhenBothRequestsFail() {
+        CustomBannerEventHandler handler = createHedgedHandler();
+        handler.requestAd(null);
+        handler.sendHedgedRequest();
+
+        hedgeAdServerSDK.fail();
+        assertTrue(terminalCallbacks.isEmpty());
+
+        handler.onAdFailed(createError());
+        assertEquals(1, terminalCallbacks.size());
+        assertEquals("onFailed", terminalCallbacks.get(0));
+    }
+
+    @Test
+    public void hedgedRequest_notifiesOnlyFirstSuccess() {
+        CustomBannerEventHandler handler = createHedgedHandler();
+        handler.requestAd(null);
+        handler.sendHedgedRequest();
+
+        // Hedged request succeeds first, followed by the primary request
+        hedgeAdServerSDK.succeed();
+        handler.onCustomEventReceived("SomeCustomEvent");
+
+        assertEquals(1, terminalCallbacks.size());
+        assertEquals("onAdServerWin", terminalCallbacks.get(0));
+    }
+
+    @Test
+    public void hedgedRequest_cancelledAfterPrimarySuccess() {
+        CustomBannerEventHandler handler = createHedgedHandler();
+        handler.requestAd(null);
+        handler.sendHedgedRequest();
+
+        handler.onBannerLoaded(null);
+        assertTrue(hedgeAdServerSDK.isCancelled);
+        assertEquals(1, terminalCallbacks.size());
+        assertEquals("onAdServerWin", terminalCallbacks.get(0));
+    }
+
+    @Test
+    public void hedgedRequest_notSentAfterPrimaryResponse() {
+        CustomBannerEventHandler handler = createHedgedHandler();
+        handler.requestAd(null);
+
+        // Primary request responds first, hedge task runs late
+        handler.onBannerLoaded(null);
+        handler.sendHedgedRequest();
+        handler.onCustomEventReceived("SomeCustomEvent");
+
+        assertNull(hedgeAdServerSDK);
+        assertEquals(1, terminalCallbacks.size());
+        assertEquals("onAdServerWin", terminalCallbacks.get(0));
+    }
+
+    @Test
+    public void request_failsImmediatelyWhenNotHedged() {
+        CustomBannerEventHandler handler = createHedgedHandler();
+        handler.requestAd(null);
+
+        handler.onAdFailed(createError());
+        assertEquals(1, terminalCallbacks.size());
+        assertEquals("onFailed", terminalCallbacks.get(0));
+    }
+
+    @Test
+    public void hedgedRequest_notifiesEveryRequestOnce() {
+        CustomBannerEventHandler handler = createHedgedHandler();
+        for (int request = 1; request <= 3; request++) {
+            handler.requestAd(null);
+            handler.sendHedgedRequest();
+            hedgeAdServerSDK.fail();
+            handler.onBannerLoaded(null);
+            assertEquals(request, terminalCallbacks.size());
+        }
+    }
+
+    private CustomBannerEventHandler createHedgedHandler() {
+        CustomBannerEventHandler handler = new CustomBannerEventHandler(null, "adUnit",
+                new POBAdSize(320, 50)) {
+            @Override
+            DummyAdServerSDK createHedgeAdServerSDK() {
+                hedgeAdServerSDK = new FakeAdServerSDK();
+                return hedgeAdServerSDK;
+            }
+        };
+        handler.setRequestBatcher(new CustomBannerRequestBatcher());
+        handler.setHedgingPolicy(new CustomHedgingPolicy());
+        handler.setEventListener(createListener());
+        return handler;
+    }
+
+    /**
+     * Ad server without context, hence it fails with an internal error on load
+     */
+    private static DummyAdServerSDK.DummyError createError() {
+        final DummyAdServerSDK.DummyError[] error = new DummyAdServerSDK.DummyError[1];
+        DummyAdServerSDK adServerSDK = new DummyAdServerSDK(null, "adUnit");
+        adServerSDK.setAdServerEventListener(new DummyAdServerSDK.DummyAdServerEventListener() {
+            @Override
+            public void onAdFailed(DummyAdServerSDK.DummyError dummyError) {
+                error[0] = dummyError;
+            }
+        });
+        adServerSDK.loadBannerAd();
+        return error[0];
+    }
+
+    // Listener which records the callbacks ending an ad request
+    private POBBannerEventListener createListener() {
+        return (POBBannerEventListener) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{POBBannerEventListener.class}, new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        String name = method.getName();
+                        if ("onOpenWrapPartnerWin".equals(name) || "onAdServerWin".equals(name)
+                                || "onFailed".equals(name)) {
+                            terminalCallbacks.add(name);
+                        }
+                        return null;
+                    }
+                });
+    }
+
+    /**
+     * Ad server of the hedged request, it holds the request until the test delivers the response
+     */
+    private static final class FakeAdServerSDK extends DummyAdServerSDK {
+        private DummyAdServerEventListener listener;
+        private boolean isCancelled;
+
+        FakeAdServerSDK() {
+            super(null, "adUnit");
+        }
+
+        @Override
+        public void setAdServerEventListener(DummyAdServerEventListener adServerEventListener) {
+            super.setAdServerEventListener(adServerEventListener);
+            listener = adServerEventListener;
+        }
+
+        @Override
+        public void loadBannerAd() {
+            isCancelled = false;
+        }
+
+        @Override
+        public void cancel() {
+            isCancelled = true;
+        }
+
+        void succeed() {
+            listener.onBannerLoaded((View) null);
+        }
+
+        void fail() {
+            // Ad server without context fails the request
+            super.loadBannerAd();
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package sdk.pubmatic.com.javasample.customhandler;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for the hedge delay of {@link CustomHedgingPolicy}.
+ */
+public class CustomHedgingPolicyTest {
+
+    @Test
+    public void getHedgeDelay_usesInitialDelayUntilEnoughSamples() {
+        CustomHedgingPolicy policy = new CustomHedgingPolicy(0.5d, 700);
+        for (int index = 0; index < 9; index++) {
+            policy.recordLatency(100);
+        }
+        assertEquals(700, policy.getHedgeDelay());
+
+        policy.recordLatency(100);
+        assertEquals(100, policy.getHedgeDelay());
+    }
+
+    @Test
+    public void getHedgeDelay_returnsPercentileOfRecentLatencies() {
+        CustomHedgingPolicy policy = new CustomHedgingPolicy(0.9d, 1000);
+        for (int latency = 10; latency <= 100; latency += 10) {
+            policy.recordLatency(latency);
+        }
+        assertEquals(90, policy.getHedgeDelay());
+    }
+
+    @Test
+    public void getHedgeDelay_forgetsOldLatencies() {
+        CustomHedgingPolicy policy = new CustomHedgingPolicy(1.0d, 1000);
+        policy.recordLatency(5000);
+        for (int index = 0; index < 64; index++) {
+            policy.recordLatency(200);
+        }
+        assertEquals(200, policy.getHedgeDelay());
+    }
+}
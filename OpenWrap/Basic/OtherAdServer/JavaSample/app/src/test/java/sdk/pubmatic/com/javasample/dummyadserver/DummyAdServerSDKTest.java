@@ -0,0 +1,115 @@
+package sdk.pubmatic.com.javasample.dummyadserver;
+
+import org.junit.Test;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for custom targeting parsing and simulated ad requests of
+ * {@link DummyAdServerSDK}.
+ */
+public class DummyAdServerSDKTest {
+
+    @Test
+    public void parseTargeting_parsesMapString() {
+        Map<String, String> targeting = new LinkedHashMap<>();
+        targeting.put("pwtecp", "1.20");
+        targeting.put("pwtbst", "1");
+        targeting.put("pwtsz", "320x50");
+
+        Map<String, String> parsed = DummyAdServerSDK.parseTargeting(targeting.toString());
+        assertEquals(targeting, parsed);
+    }
+
+    @Test
+    public void parseTargeting_handlesEmptyAndNull() {
+        assertTrue(DummyAdServerSDK.parseTargeting(null).isEmpty());
+        assertTrue(DummyAdServerSDK.parseTargeting("{}").isEmpty());
+        assertTrue(DummyAdServerSDK.parseTargeting("").isEmpty());
+    }
+
+    @Test
+    public void parseTargeting_skipsInvalidPairs() {
+        Map<String, String> parsed = DummyAdServerSDK.parseTargeting("{pwtecp=0.50, invalid, =1}");
+        assertEquals(1, parsed.size());
+        assertEquals("0.50", parsed.get("pwtecp"));
+    }
+
+    @Test
+    public void getPartnerPrice_readsPriceFromTargeting() {
+        assertEquals(1.2d, DummyAdServerSDK.getPartnerPrice(
+                DummyAdServerSDK.parseTargeting("{pwtecp=1.20, pwtsz=320x50}")), 0.0d);
+        assertEquals(0.0d, DummyAdServerSDK.getPartnerPrice(
+                DummyAdServerSDK.parseTargeting("{pwtecp=invalid}")), 0.0d);
+    }
+
+    @Test
+    public void getPartnerPrice_clearedTargetingHasNoPrice() {
+        // Event handler clears the targeting with null when OpenWrap SDK has no bid
+        assertEquals(0.0d, DummyAdServerSDK.getPartnerPrice(
+                DummyAdServerSDK.parseTargeting(null)), 0.0d);
+    }
+
+    @Test
+    public void getSimulatedResult_splitsErrorsBetweenServerAndNetwork() {
+        DummyAdServerConfig config = createConfig(1.0d, 0.4d, 1.0d);
+
+        assertEquals(DummyAdServerSDK.RESULT_SERVER_ERROR,
+                DummyAdServerSDK.getSimulatedResult(config, 0.1d, config, 0.0d, 2.0d));
+        assertEquals(DummyAdServerSDK.RESULT_NETWORK_ERROR,
+                DummyAdServerSDK.getSimulatedResult(config, 0.3d, config, 0.0d, 2.0d));
+        assertNotEquals(DummyAdServerSDK.RESULT_NETWORK_ERROR,
+                DummyAdServerSDK.getSimulatedResult(config, 0.4d, config, 0.0d, 2.0d));
+    }
+
+    @Test
+    public void getSimulatedResult_errorIsDecidedByAdCallConfig() {
+        DummyAdServerConfig callConfig = createConfig(1.0d, 0.0d, 1.0d);
+        DummyAdServerConfig slotConfig = createConfig(1.0d, 1.0d, 1.0d);
+
+        assertEquals(DummyAdServerSDK.RESULT_AD_SERVER_WIN,
+                DummyAdServerSDK.getSimulatedResult(callConfig, 0.5d, slotConfig, 0.5d, 0.0d));
+    }
+
+    @Test
+    public void getSimulatedResult_noFillWithoutAdServerAdAndBid() {
+        DummyAdServerConfig config = createConfig(0.5d, 0.0d, 1.0d);
+
+        assertEquals(DummyAdServerSDK.RESULT_NO_FILL,
+                DummyAdServerSDK.getSimulatedResult(config, 0.5d, config, 0.5d, 0.0d));
+        assertEquals(DummyAdServerSDK.RESULT_AD_SERVER_WIN,
+                DummyAdServerSDK.getSimulatedResult(config, 0.5d, config, 0.4d, 0.0d));
+    }
+
+    @Test
+    public void getSimulatedResult_higherBidWinsAuction() {
+        DummyAdServerConfig config = createConfig(1.0d, 0.0d, 1.0d);
+
+        assertEquals(DummyAdServerSDK.RESULT_PARTNER_WIN,
+                DummyAdServerSDK.getSimulatedResult(config, 0.5d, config, 0.5d, 1.5d));
+        assertEquals(DummyAdServerSDK.RESULT_AD_SERVER_WIN,
+                DummyAdServerSDK.getSimulatedResult(config, 0.5d, config, 0.5d, 1.0d));
+        assertEquals(DummyAdServerSDK.RESULT_AD_SERVER_WIN,
+                DummyAdServerSDK.getSimulatedResult(config, 0.5d, config, 0.5d, 0.5d));
+    }
+
+    @Test
+    public void getSimulatedResult_bidWinsWithoutAdServerAd() {
+        DummyAdServerConfig config = createConfig(0.0d, 0.0d, 1.0d);
+
+        assertEquals(DummyAdServerSDK.RESULT_PARTNER_WIN,
+                DummyAdServerSDK.getSimulatedResult(config, 0.5d, config, 0.5d, 0.1d));
+    }
+
+    private static DummyAdServerConfig createConfig(double fillRate, double errorRate,
+                                                    double adServerPrice) {
+        DummyAdServerConfig config = new DummyAdServerConfig();
+        config.setFillRate(fillRate);
+        config.setErrorRate(errorRate);
+        config.setAdServerPrice(adServerPrice);
+        return config;
+    }
+}
@@ -0,0 +1,118 @@
+package sdk.pubmatic.com.javasample.customhandler;
+
+import androidx.benchmark.BenchmarkState;
+import androidx.benchmark.junit4.BenchmarkRule;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.pubmatic.sdk.common.POBAdSize;
+import com.pubmatic.sdk.openwrap.core.POBBid;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+/**
+ * Benchmarks of CustomBannerEventHandler.requestAd(), i.e. passing the bid targeting to
+ * DummyAdServerSDK and loading the banner. DummyAdServerSDK responds synchronously (simulation
+ * mode is not enabled), so the complete request is measured.
+ * <p>
+ * Run with "./gradlew benchmark:connectedCheck" on a physical device.
+ */
+@RunWith(Parameterized.class)
+public class CustomBannerRequestAdBenchmark {
+
+    /**
+     * Ad unit for which DummyAdServerSDK notifies the custom event, i.e. no view is created
+     */
+    private static final String AD_UNIT_ID = "OtherASBannerAdUnit";
+    /**
+     * Number of distinct bids cycled in the benchmarks of new bid
+     */
+    private static final int BID_COUNT = 16;
+
+    @Rule
+    public BenchmarkRule benchmarkRule = new BenchmarkRule();
+
+    @Parameterized.Parameter
+    public int targetingSize;
+
+    private POBBid[] bids;
+    private CustomBannerEventHandler eventHandler;
+
+    @Parameterized.Parameters(name = "targetingSize={0}")
+    public static Collection<Object[]> parameters() {
+        return Arrays.asList(new Object[][]{{4}, {16}, {64}});
+    }
+
+    @Before
+    public void setUp() {
+        bids = new POBBid[BID_COUNT];
+        for (int index = 0; index < BID_COUNT; index++) {
+            bids[index] = createBid(index, targetingSize);
+        }
+        eventHandler = new CustomBannerEventHandler(InstrumentationRegistry.getInstrumentation().getTargetContext(),
+                AD_UNIT_ID, POBAdSize.BANNER_SIZE_320x50);
+    }
+
+    @After
+    public void tearDown() {
+        eventHandler.destroy();
+    }
+
+    /**
+     * Banner refresh with the same bid
+     */
+    @Test
+    public void requestAd_sameBid() {
+        POBBid bid = bids[0];
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) {
+            eventHandler.requestAd(bid);
+        }
+    }
+
+    /**
+     * Every request with a new bid
+     */
+    @Test
+    public void requestAd_newBid() {
+        int index = 0;
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) {
+            eventHandler.requestAd(bids[index]);
+            index = (index + 1) % BID_COUNT;
+        }
+    }
+
+    /**
+     * Creates a synthetic bid with given number of targeting parameters. POBBid is mocked with
+     * stub only setting, so that mock does not record the invocations.
+     */
+    private static POBBid createBid(int id, int targetingSize) {
+        Map<String, String> targeting = new HashMap<>();
+        targeting.put("pwtsid", "bid-" + id);
+        targeting.put("pwtbst", "1");
+        targeting.put("pwtecp", String.valueOf(1.0d + id * 0.1d));
+        targeting.put("pwtpid", "pubmatic");
+        for (int index = targeting.size(); index < targetingSize; index++) {
+            targeting.put("pwtkey" + index, "value" + id + "_" + index);
+        }
+
+        POBBid bid = mock(POBBid.class, withSettings().stubOnly());
+        when(bid.getTargetingInfo()).thenReturn(targeting);
+        when(bid.getPrice()).thenReturn(1.0d + id * 0.1d);
+        return bid;
+    }
+}